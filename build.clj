@@ -5,6 +5,8 @@
 (def version "0.1.0-alpha8")
 (def class-dir "target/classes")
 (def jar-file (format "target/%s-%s.jar" (name lib) version))
+(def aot-class-dir "target/aot-classes")
+(def aot-jar-file (format "target/%s-%s-aot.jar" (name lib) version))
 
 ;; delay to defer side effects (artifact downloads)
 (def basis (delay (b/create-basis {:project "deps.edn"})))
@@ -12,8 +14,9 @@
 (defn clean [_]
   (b/delete {:path "target"}))
 
-(defn pom [_]
-  (b/write-pom {:class-dir class-dir
+(defn- write-pom!
+  [dir]
+  (b/write-pom {:class-dir dir
                 :lib lib
                 :version version
                 :basis @basis
@@ -30,41 +33,92 @@
                            [:scm
                             [:url "https://github.com/willcohen/clj-proj"]]]}))
 
-(defn jar [_]
-  (clean nil)
-  (pom nil)
-  ;; Compile Java sources
-  (b/javac {:src-dirs ["src/java"]
-            :class-dir class-dir
+(defn pom [_]
+  (write-pom! class-dir))
+
+(def javac-opts ["--release" "21"])
+
+;; The Vector API kernels (src/java-vector) need the incubating
+;; jdk.incubator.vector module, and javac warns whenever it is used. They are
+;; only compiled when a build is asked for them with :vector true; FastPath
+;; falls back to its scalar loops when the class or the module is missing.
+(def vector-javac-opts ["--release" "21" "--add-modules" "jdk.incubator.vector"])
+
+;; Files under src/ and resources/ that belong to the npm package or the build,
+;; relative to the class directory.
+(def ^:private non-jar-paths
+  ["net/willcohen/proj/node_modules"
+   "net/willcohen/proj/dist"
+   "net/willcohen/proj/package.json"
+   "net/willcohen/proj/package-lock.json"
+   "net/willcohen/proj/esbuild.config.mjs"
+   "net/willcohen/proj/.npmignore"
+   ;; JavaScript build artifacts
+   "net/willcohen/proj/proj.mjs"
+   "net/willcohen/proj/fndefs.mjs"
+   "net/willcohen/proj/macros.mjs"
+   "net/willcohen/proj/wasm.mjs"
+   "net/willcohen/proj/proj-loader.mjs"
+   ;; Other non-jar files
+   "net/willcohen/proj/README.md"
+   "net/willcohen/proj/LICENSE"
+   "net/willcohen/proj/wasm.cljc.bak"
+   ;; WASM files (they should be in resources/wasm if needed)
+   "net/willcohen/proj/proj-emscripten.js"
+   "net/willcohen/proj/proj-emscripten.wasm"
+   ;; clj-kondo exports
+   "clj-kondo.exports"
+   ;; Duplicate/misplaced files
+   ".keep"
+   "net/willcohen/proj/proj" ; duplicate proj.db
+   "net/willcohen/proj/sqlite3.wasm"])
+
+(defn- copy-jar-contents
+  "Compile the Java sources into dir and copy the Clojure sources and
+   resources next to them, without the npm and build files. With vector?,
+   also compile the optional Vector API kernels."
+  [dir vector?]
+  (b/javac {:src-dirs (if vector? ["src/java" "src/java-vector"] ["src/java"])
+            :class-dir dir
             :basis @basis
-            :javac-opts ["--release" "21"]})
+            :javac-opts (if vector? vector-javac-opts javac-opts)})
   (b/copy-dir {:src-dirs ["src/clj" "src/cljc" "resources"]
-               :target-dir class-dir})
-  ;; Delete npm/node related files that shouldn't be in the jar
-  (b/delete {:path "target/classes/net/willcohen/proj/node_modules"})
-  (b/delete {:path "target/classes/net/willcohen/proj/dist"})
-  (b/delete {:path "target/classes/net/willcohen/proj/package.json"})
-  (b/delete {:path "target/classes/net/willcohen/proj/package-lock.json"})
-  (b/delete {:path "target/classes/net/willcohen/proj/esbuild.config.mjs"})
-  (b/delete {:path "target/classes/net/willcohen/proj/.npmignore"})
-  ;; Delete JavaScript build artifacts
-  (b/delete {:path "target/classes/net/willcohen/proj/proj.mjs"})
-  (b/delete {:path "target/classes/net/willcohen/proj/fndefs.mjs"})
-  (b/delete {:path "target/classes/net/willcohen/proj/macros.mjs"})
-  (b/delete {:path "target/classes/net/willcohen/proj/wasm.mjs"})
-  (b/delete {:path "target/classes/net/willcohen/proj/proj-loader.mjs"})
-  ;; Delete other non-jar files
-  (b/delete {:path "target/classes/net/willcohen/proj/README.md"})
-  (b/delete {:path "target/classes/net/willcohen/proj/LICENSE"})
-  (b/delete {:path "target/classes/net/willcohen/proj/wasm.cljc.bak"})
-  ;; Delete WASM files (they should be in resources/wasm if needed)
-  (b/delete {:path "target/classes/net/willcohen/proj/proj-emscripten.js"})
-  (b/delete {:path "target/classes/net/willcohen/proj/proj-emscripten.wasm"})
-  ;; Delete clj-kondo exports
-  (b/delete {:path "target/classes/clj-kondo.exports"})
-  ;; Delete duplicate/misplaced files
-  (b/delete {:path "target/classes/.keep"})
-  (b/delete {:path "target/classes/net/willcohen/proj/proj"})  ; duplicate proj.db
-  (b/delete {:path "target/classes/net/willcohen/proj/sqlite3.wasm"})
+               :target-dir dir})
+  (doseq [path non-jar-paths]
+    (b/delete {:path (str dir "/" path)})))
+
+(defn jar
+  "Build target/proj-<version>.jar. Pass :vector true to include the Vector
+   API fast-path kernels, which run when the consumer's JVM is started with
+   --add-modules jdk.incubator.vector."
+  [{:keys [vector]}]
+  (clean nil)
+  (pom nil)
+  (copy-jar-contents class-dir vector)
   (b/jar {:class-dir class-dir
-          :jar-file jar-file}))
\ No newline at end of file
+          :jar-file jar-file}))
+
+(defn aot-jar
+  "Build target/proj-<version>-aot.jar: the regular jar plus AOT-compiled
+   classes for the net.willcohen.proj namespaces, so the first require (and
+   the first PROJ.init() from Java) loads classes instead of compiling
+   proj.cljc, fndefs.cljc, wasm.cljc and the FFI wrappers. Dependencies are
+   not AOT-compiled; they keep loading from their own jars.
+
+   Compiling loads the namespaces, which unpacks the native library and starts
+   a GraalVM context in the build JVM, so this needs the same JVM as a normal
+   run (GraalVM JDK 21+). Takes :vector like jar."
+  [{:keys [vector]}]
+  (b/delete {:path aot-class-dir})
+  (write-pom! aot-class-dir)
+  (copy-jar-contents aot-class-dir vector)
+  (b/compile-clj {:basis @basis
+                  :class-dir aot-class-dir
+                  :ns-compile '[net.willcohen.proj.proj]
+                  :filter-nses '[net.willcohen.proj]
+                  :java-opts ["-XX:+UnlockExperimentalVMOptions"
+                              "-XX:+EnableJVMCI"
+                              "--enable-native-access=ALL-UNNAMED"
+                              "-Dpolyglot.engine.WarnInterpreterOnly=false"]})
+  (b/jar {:class-dir aot-class-dir
+          :jar-file aot-jar-file}))
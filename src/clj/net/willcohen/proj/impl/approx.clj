@@ -0,0 +1,160 @@
+(ns net.willcohen.proj.impl.approx
+  "Adaptive approximate transformer for raster warping.
+
+   Exact transforms are only computed on a coarse control grid. Each grid block
+   is probed at its corners, centre and edge midpoints; if bilinear
+   interpolation from the corners reproduces the probes within max-error, every
+   pixel in the block is interpolated, otherwise the block is split into
+   quadrants and probed again. All probes of one refinement level go through a
+   single exact transform call. This is the same idea as GDAL's approximate
+   transformer, applied in two dimensions.
+
+   The exact transform is supplied by the caller as (exact! xs ys), which
+   transforms two double arrays in place, so this namespace has no dependency
+   on a PROJ backend.")
+
+;; Probe positions within a block, as fractions of its width and height.
+;; The first four are the corners used for interpolation.
+(def ^:private probe-fracs
+  [[0.0 0.0] [1.0 0.0] [0.0 1.0] [1.0 1.0]
+   [0.5 0.5] [0.5 0.0] [0.5 1.0] [0.0 0.5] [1.0 0.5]])
+
+(def ^:private probes-per-block (count probe-fracs))
+
+(defn- initial-blocks
+  "Tile a width x height pixel grid into blocks of at most step pixels.
+   Blocks are [c0 r0 c1 r1] with inclusive corner pixels, sharing edges."
+  [width height step]
+  (let [edges (fn [n] (vec (distinct (concat (range 0 (dec n) step) [(dec n)]))))
+        cs (edges width)
+        rs (edges height)]
+    (for [[r0 r1] (if (= 1 (count rs)) [[0 0]] (partition 2 1 rs))
+          [c0 c1] (if (= 1 (count cs)) [[0 0]] (partition 2 1 cs))]
+      [c0 r0 c1 r1])))
+
+(defmacro ^:private bilerp
+  "Bilinear interpolation of four corner values at fractions (u, v).
+   A macro because primitive fns are limited to four arguments."
+  [v00 v10 v01 v11 u v]
+  `(let [u# (double ~u)
+         v# (double ~v)]
+     (+ (* (- 1.0 u#) (- 1.0 v#) ~v00)
+        (* u# (- 1.0 v#) ~v10)
+        (* (- 1.0 u#) v# ~v01)
+        (* u# v# ~v11))))
+
+(defn- probe-blocks!
+  "Exact-transform every probe of every block in one call.
+   Returns [xs ys] with probes-per-block entries per block."
+  [blocks ^doubles gt exact!]
+  (let [n (* probes-per-block (count blocks))
+        xs (double-array n)
+        ys (double-array n)]
+    (loop [bs (seq blocks) i 0]
+      (when bs
+        (let [[c0 r0 c1 r1] (first bs)
+              i (long (reduce (fn [^long i [fc fr]]
+                                (let [c (+ 0.5 c0 (* (double fc) (- c1 c0)))
+                                      r (+ 0.5 r0 (* (double fr) (- r1 r0)))]
+                                  (aset xs i (+ (aget gt 0) (* c (aget gt 1)) (* r (aget gt 2))))
+                                  (aset ys i (+ (aget gt 3) (* c (aget gt 4)) (* r (aget gt 5))))
+                                  (inc i)))
+                              i probe-fracs))]
+          (recur (next bs) i))))
+    (exact! xs ys)
+    [xs ys]))
+
+(defn- block-error
+  "Largest distance between the exact probes of block b and their bilinear
+   estimates from the block's corners. Non-finite probes count as infinite."
+  ^double [^doubles xs ^doubles ys ^long b]
+  (let [base (* b probes-per-block)
+        x00 (aget xs base) x10 (aget xs (+ base 1)) x01 (aget xs (+ base 2)) x11 (aget xs (+ base 3))
+        y00 (aget ys base) y10 (aget ys (+ base 1)) y01 (aget ys (+ base 2)) y11 (aget ys (+ base 3))]
+    (loop [k 0 worst 0.0]
+      (if (< k probes-per-block)
+        (let [[u v] (nth probe-fracs k)
+              ex (aget xs (+ base k))
+              ey (aget ys (+ base k))
+              dx (- ex (bilerp x00 x10 x01 x11 u v))
+              dy (- ey (bilerp y00 y10 y01 y11 u v))
+              d (Math/sqrt (+ (* dx dx) (* dy dy)))]
+          (recur (inc k) (if (Double/isFinite d) (max worst d) Double/POSITIVE_INFINITY)))
+        worst))))
+
+(defn- fill-block!
+  "Bilinearly interpolate every pixel of block b into the output arrays."
+  [[c0 r0 c1 r1] ^doubles xs ^doubles ys b width ^doubles out-x ^doubles out-y]
+  (let [base (* (long b) probes-per-block)
+        width (long width)
+        x00 (aget xs base) x10 (aget xs (+ base 1)) x01 (aget xs (+ base 2)) x11 (aget xs (+ base 3))
+        y00 (aget ys base) y10 (aget ys (+ base 1)) y01 (aget ys (+ base 2)) y11 (aget ys (+ base 3))
+        c0 (long c0) r0 (long r0) c1 (long c1) r1 (long r1)
+        cw (double (max 1 (- c1 c0)))
+        rh (double (max 1 (- r1 r0)))]
+    (loop [r r0]
+      (when (<= r r1)
+        (let [v (/ (- r r0) rh)
+              row (* r width)]
+          (loop [c c0]
+            (when (<= c c1)
+              (let [u (/ (- c c0) cw)
+                    idx (+ row c)]
+                (aset out-x idx (bilerp x00 x10 x01 x11 u v))
+                (aset out-y idx (bilerp y00 y10 y01 y11 u v))
+                (recur (inc c))))))
+        (recur (inc r))))))
+
+(defn- split-block
+  [[c0 r0 c1 r1]]
+  (let [cm (quot (+ c0 c1) 2)
+        rm (quot (+ r0 r1) 2)
+        cols (if (> (- c1 c0) 1) [[c0 cm] [cm c1]] [[c0 c1]])
+        rows (if (> (- r1 r0) 1) [[r0 rm] [rm r1]] [[r0 r1]])]
+    (for [[ra rb] rows [ca cb] cols] [ca ra cb rb])))
+
+(defn- leaf?
+  "Blocks of at most 2x2 pixels are all corners, so interpolation is exact."
+  [[c0 r0 c1 r1]]
+  (and (<= (- c1 c0) 1) (<= (- r1 r0) 1)))
+
+(defn approximate-grid
+  "Build a dense destination-to-source coordinate map for a width x height
+   raster.
+
+   gt is a GDAL-style geotransform [x0 dx/dcol dx/drow y0 dy/dcol dy/drow]
+   mapping destination pixel (col, row) to destination CRS coordinates;
+   pixel centres are used. exact! transforms destination CRS coordinates to
+   source CRS coordinates in place.
+
+   Options:
+   - :max-error     largest tolerated interpolation error in source CRS units
+   - :initial-step  control grid spacing in pixels before refinement
+
+   Returns {:x double[] :y double[] :width :height :max-error :exact-count},
+   where :x/:y hold source coordinates in row-major pixel order, :max-error is
+   the largest error measured at accepted blocks' probes, and :exact-count is
+   the number of exact transforms performed."
+  [exact! width height gt {:keys [max-error initial-step]}]
+  (let [width (long width)
+        height (long height)
+        gt (double-array gt)
+        out-x (double-array (* width height))
+        out-y (double-array (* width height))]
+    (loop [pending (vec (initial-blocks width height (max 1 (long initial-step))))
+           achieved 0.0
+           exact-count 0]
+      (if (empty? pending)
+        {:x out-x :y out-y :width width :height height
+         :max-error achieved :exact-count exact-count}
+        (let [[xs ys] (probe-blocks! pending gt exact!)
+              [next-pending achieved]
+              (reduce-kv (fn [[acc worst] b block]
+                           (let [err (block-error xs ys b)]
+                             (if (or (<= err (double max-error)) (leaf? block))
+                               (do (fill-block! block xs ys b width out-x out-y)
+                                   [acc (if (leaf? block) worst (max worst err))])
+                               [(into acc (split-block block)) worst])))
+                         [[] achieved]
+                         pending)]
+          (recur next-pending (double achieved) (+ exact-count (* probes-per-block (count pending)))))))))
@@ -0,0 +1,95 @@
+(ns net.willcohen.proj.impl.area
+  "Per-point selection among candidate coordinate operations by area of use.
+
+   Each candidate has a bounding box in the CRS the points are given in
+   (4 doubles [xmin ymin xmax ymax] per candidate in one flat array; NaN for
+   candidates whose area could not be transformed). Candidates are in
+   preference order, as returned by proj_create_operations, and a point takes
+   the first usable candidate whose box contains it. Boxes are in the CRS's
+   axis order, so for a lat-first CRS such as EPSG:4326 longitude is the
+   second axis; lon-axis (0 or 1) names it. A box whose minimum exceeds its
+   maximum on that axis crosses the antimeridian.
+
+   Points are then grouped per candidate with a counting sort, so the caller
+   can transform each group with one call and scatter results back into the
+   original order. Nothing here touches PROJ.")
+
+(defn- within?
+  [^double lo ^double hi ^double v]
+  (<= lo v hi))
+
+(defn- within-wrapping?
+  [^double lo ^double hi ^double v]
+  (if (<= lo hi)
+    (<= lo v hi)
+    (or (>= v lo) (<= v hi))))
+
+(defn- contains-point?
+  [^doubles bounds ^long i ^long lon-axis ^double x ^double y]
+  (let [b (* 4 i)
+        xmin (aget bounds b)
+        ymin (aget bounds (+ b 1))
+        xmax (aget bounds (+ b 2))
+        ymax (aget bounds (+ b 3))]
+    (if (zero? lon-axis)
+      (and (within? ymin ymax y) (within-wrapping? xmin xmax x))
+      (and (within? xmin xmax x) (within-wrapping? ymin ymax y)))))
+
+(defn assign
+  "Index of the chosen candidate for each of the first n interleaved
+   [x y z t] coordinates, or -1 when no usable candidate covers the point
+   (including non-finite points). usable is a boolean array, one per
+   candidate; lon-axis is the longitude axis of a geographic CRS (default 0)."
+  (^ints [bounds usable coords n]
+   (assign bounds usable coords n 0))
+  (^ints [^doubles bounds ^booleans usable ^doubles coords n lon-axis]
+   (let [n (long n)
+         lon-axis (long lon-axis)
+         k (alength usable)
+         choice (int-array n)]
+     (dotimes [p n]
+       (let [x (aget coords (* 4 p))
+             y (aget coords (inc (* 4 p)))]
+         (aset choice p
+               (int (if (and (Double/isFinite x) (Double/isFinite y))
+                      (loop [i 0]
+                        (cond
+                          (= i k) -1
+                          (and (aget usable i) (contains-point? bounds i lon-axis x y)) i
+                          :else (recur (inc i))))
+                      -1)))))
+     choice)))
+
+(defn buckets
+  "Group point indices by chosen candidate. Returns a vector with one int
+   array per candidate (empty when unused), each listing point indices in
+   ascending order. Points with choice -1 are left out."
+  [^ints choice candidate-count]
+  (let [k (long candidate-count)
+        counts (long-array k)]
+    (dotimes [p (alength choice)]
+      (let [c (aget choice p)]
+        (when (>= c 0) (aset counts c (inc (aget counts c))))))
+    (let [out (mapv #(int-array (aget counts %)) (range k))
+          fill (long-array k)]
+      (dotimes [p (alength choice)]
+        (let [c (aget choice p)]
+          (when (>= c 0)
+            (aset ^ints (nth out c) (aget fill c) p)
+            (aset fill c (inc (aget fill c))))))
+      out)))
+
+(defn gather!
+  "Copy the coordinates listed in idx from src into the front of dst
+   (both interleaved [x y z t])."
+  [^doubles src ^ints idx ^doubles dst]
+  (dotimes [j (alength idx)]
+    (System/arraycopy src (* 4 (aget idx j)) dst (* 4 j) 4))
+  dst)
+
+(defn scatter!
+  "Inverse of gather!: copy the front of src back to the positions in idx."
+  [^doubles src ^ints idx ^doubles dst]
+  (dotimes [j (alength idx)]
+    (System/arraycopy src (* 4 j) dst (* 4 (aget idx j)) 4))
+  dst)
@@ -0,0 +1,202 @@
+(ns net.willcohen.proj.impl.geometry
+  "Vertex packing for geometry-level transforms.
+
+   Walks WKB buffers and GeoJSON trees without building intermediate geometry
+   objects. Each supported format exposes three operations:
+
+   - vertex-count: number of positions in the geometry
+   - pack!: write every position as [x y z t] into a flat double array
+     (the interleaved PJ_COORD layout proj_trans_array expects)
+   - unpack: rebuild the geometry from a flat double array holding the
+     transformed positions, in the same order pack! wrote them
+
+   Only x, y and z are taken from the transformed values. M ordinates in WKB
+   and any extra GeoJSON position members are carried over unchanged."
+  (:import [java.nio ByteBuffer ByteOrder]))
+
+;; --- WKB ---
+;;
+;; Supports ISO WKB (Z/M/ZM as +1000/+2000/+3000 type codes) and EWKB (high-bit
+;; Z/M/SRID flags). Nested geometries carry their own byte-order byte, so the
+;; buffer order is reset at every header.
+
+(def ^:private ewkb-z 0x80000000)
+(def ^:private ewkb-m 0x40000000)
+(def ^:private ewkb-srid 0x20000000)
+
+(defn- wkb-header
+  "Read the geometry header at pos. Returns
+   [geometry-type has-z? has-m? next-pos] and sets the buffer byte order."
+  [^ByteBuffer buf pos]
+  (let [order (if (zero? (.get buf (int pos))) ByteOrder/BIG_ENDIAN ByteOrder/LITTLE_ENDIAN)
+        _ (.order buf order)
+        raw (bit-and (long (.getInt buf (int (inc pos)))) 0xFFFFFFFF)
+        has-srid? (not (zero? (bit-and raw ewkb-srid)))
+        base (bit-and raw 0x0FFFFFFF)
+        iso-dims (quot base 1000)
+        has-z? (or (not (zero? (bit-and raw ewkb-z))) (#{1 3} iso-dims))
+        has-m? (or (not (zero? (bit-and raw ewkb-m))) (#{2 3} iso-dims))]
+    [(rem base 1000) (boolean has-z?) (boolean has-m?)
+     (+ pos 5 (if has-srid? 4 0))]))
+
+(defn- wkb-uint
+  [^ByteBuffer buf pos]
+  (bit-and (long (.getInt buf (int pos))) 0xFFFFFFFF))
+
+(defn- walk-wkb
+  "Walk one geometry starting at pos, calling (visit buf coord-pos has-z?) for
+   each position. Returns the position just past the geometry."
+  [^ByteBuffer buf pos visit]
+  (let [[gtype has-z? has-m? pos] (wkb-header buf pos)
+        stride (* 8 (+ 2 (if has-z? 1 0) (if has-m? 1 0)))
+        points (fn [pos n]
+                 (dotimes [i n]
+                   (visit buf (+ pos (* i stride)) has-z?))
+                 (+ pos (* n stride)))
+        rings (fn [pos]
+                (loop [pos (+ pos 4) i 0 n (wkb-uint buf pos)]
+                  (if (< i n)
+                    (let [npts (wkb-uint buf pos)]
+                      (recur (points (+ pos 4) npts) (inc i) n))
+                    pos)))]
+    (case (int gtype)
+      1 (points pos 1)
+      2 (points (+ pos 4) (wkb-uint buf pos))
+      (3 17) (rings pos)
+      (4 5 6 7 15 16) (loop [pos (+ pos 4) i 0 n (wkb-uint buf pos)]
+                        (if (< i n)
+                          (recur (walk-wkb buf pos visit) (inc i) n)
+                          pos))
+      (throw (ex-info "Unsupported WKB geometry type" {:type gtype :position pos})))))
+
+(defn wkb-vertex-count
+  "Number of positions in a WKB geometry."
+  [^ByteBuffer wkb]
+  (let [n (volatile! 0)]
+    (walk-wkb (.duplicate wkb) (.position wkb) (fn [_ _ _] (vswap! n inc)))
+    @n))
+
+(defn wkb-pack!
+  "Write every position of a WKB geometry into out as [x y z t] starting at
+   coordinate index offset. Returns the next free coordinate index."
+  [^ByteBuffer wkb ^doubles out offset]
+  (let [i (volatile! offset)]
+    (walk-wkb (.duplicate wkb) (.position wkb)
+              (fn [^ByteBuffer buf pos has-z?]
+                (let [base (* 4 @i)]
+                  (aset out base (.getDouble buf (int pos)))
+                  (aset out (+ base 1) (.getDouble buf (int (+ pos 8))))
+                  (aset out (+ base 2) (if has-z? (.getDouble buf (int (+ pos 16))) 0.0))
+                  (aset out (+ base 3) 0.0)
+                  (vswap! i inc))))
+    @i))
+
+(defn wkb-unpack
+  "Copy a WKB geometry into a new heap ByteBuffer, replacing each position
+   with the transformed values in coords starting at coordinate index offset.
+   Empty points (NaN x) stay empty. Returns [new-buffer next-offset]."
+  [^ByteBuffer wkb ^doubles coords offset]
+  (let [src (.duplicate wkb)
+        out (ByteBuffer/allocate (.remaining src))
+        _ (.put out src)
+        _ (.flip out)
+        i (volatile! offset)]
+    (walk-wkb out 0
+              (fn [^ByteBuffer buf pos has-z?]
+                (let [base (* 4 @i)]
+                  (when-not (Double/isNaN (.getDouble buf (int pos)))
+                    (.putDouble buf (int pos) (aget coords base))
+                    (.putDouble buf (int (+ pos 8)) (aget coords (+ base 1)))
+                    (when has-z?
+                      (.putDouble buf (int (+ pos 16)) (aget coords (+ base 2)))))
+                  (vswap! i inc))))
+    [(.order out ByteOrder/BIG_ENDIAN) @i]))
+
+;; --- GeoJSON ---
+;;
+;; Accepts keyword-keyed or string-keyed maps (whatever the JSON parser
+;; produced) and java.util.Map/List trees from Java callers. Rebuilt trees use
+;; the same key style as the input. Any "bbox" member is dropped since it no
+;; longer describes the transformed geometry.
+
+(def ^:private coordinate-depth
+  {"Point" 0 "LineString" 1 "MultiPoint" 1
+   "Polygon" 2 "MultiLineString" 2 "MultiPolygon" 3})
+
+(defn- gj-key
+  "The key used for member k in map m: the keyword if present, else the string."
+  [m k]
+  (if (contains? m (keyword k)) (keyword k) k))
+
+(defn- gj-get
+  [m k]
+  (get m (gj-key m k)))
+
+(defn- gj-walk
+  "Reduce f over every position in a GeoJSON object, depth-first."
+  [f acc g]
+  (if (nil? g)
+    acc
+    (let [t (gj-get g "type")]
+      (if-let [depth (coordinate-depth t)]
+        (letfn [(step [acc c d]
+                  (if (zero? d)
+                    (f acc c)
+                    (reduce #(step %1 %2 (dec d)) acc c)))]
+          (step acc (gj-get g "coordinates") depth))
+        (case t
+          "GeometryCollection" (reduce #(gj-walk f %1 %2) acc (gj-get g "geometries"))
+          "Feature" (gj-walk f acc (gj-get g "geometry"))
+          "FeatureCollection" (reduce #(gj-walk f %1 %2) acc (gj-get g "features"))
+          (throw (ex-info "Unsupported GeoJSON type" {:type t})))))))
+
+(defn geojson-vertex-count
+  "Number of positions in a GeoJSON geometry, Feature or FeatureCollection."
+  [g]
+  (gj-walk (fn [n _] (inc n)) 0 g))
+
+(defn geojson-pack!
+  "Write every position of a GeoJSON object into out as [x y z t] starting at
+   coordinate index offset. Returns the next free coordinate index."
+  [g ^doubles out offset]
+  (gj-walk (fn [i pos]
+             (let [base (* 4 i)]
+               (aset out base (double (nth pos 0)))
+               (aset out (+ base 1) (double (nth pos 1)))
+               (aset out (+ base 2) (if (> (count pos) 2) (double (nth pos 2)) 0.0))
+               (aset out (+ base 3) 0.0)
+               (inc i)))
+           offset g))
+
+(defn- gj-rebuild
+  [g cursor ^doubles coords]
+  (when g
+    (let [t (gj-get g "type")
+          m (dissoc (into {} g) :bbox "bbox")
+          rebuild-all (fn [k] (let [k (gj-key m k)]
+                                (assoc m k (mapv #(gj-rebuild % cursor coords) (get m k)))))]
+      (if-let [depth (coordinate-depth t)]
+        (letfn [(step [c d]
+                  (if (zero? d)
+                    (let [base (* 4 @cursor)
+                          pos (vec c)]
+                      (vswap! cursor inc)
+                      (cond-> (assoc pos 0 (aget coords base) 1 (aget coords (+ base 1)))
+                        (> (count pos) 2) (assoc 2 (aget coords (+ base 2)))))
+                    (mapv #(step % (dec d)) c)))]
+          (let [k (gj-key m "coordinates")]
+            (assoc m k (step (get m k) depth))))
+        (case t
+          "GeometryCollection" (rebuild-all "geometries")
+          "Feature" (let [k (gj-key m "geometry")]
+                      (assoc m k (gj-rebuild (get m k) cursor coords)))
+          "FeatureCollection" (rebuild-all "features"))))))
+
+(defn geojson-unpack
+  "Rebuild a GeoJSON object with each position replaced by the transformed
+   values in coords starting at coordinate index offset.
+   Returns [new-object next-offset]."
+  [g ^doubles coords offset]
+  (let [cursor (volatile! offset)
+        result (gj-rebuild g cursor coords)]
+    [result @cursor]))
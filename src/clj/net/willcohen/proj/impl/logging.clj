@@ -7,18 +7,219 @@
   prevent GC (JNA requirement -- if the callback is collected, the function pointer
   becomes invalid).
 
+  Which messages PROJ produces at all is decided per context by proj_log_level
+  (PJ_LOG_ERROR by default), so raising one context's level does not make the
+  others format debug output. The callback does not log on the thread PROJ
+  calls it from: it puts the message in a bounded lock-free ring buffer and a
+  daemon thread hands it to clojure.tools.logging (PJ_LOG_ERROR as :error,
+  PJ_LOG_DEBUG as :debug, PJ_LOG_TRACE as :trace). Messages are dropped, and
+  counted, when the buffer is full or the per-second rate limit is reached,
+  so a noisy context cannot stall transforms.
+
   Only used for the FFI backend. GraalVM uses PROJ's default logging (output via the
   polyglot context's stdout/stderr). Browser/Node.js workers set up logging via
   addFunction in proj-worker.mjs."
   (:require [net.willcohen.proj.fndefs :as fndefs]
             [tech.v3.datatype.ffi.ptr-value :as ptr-value]
             [clojure.tools.logging :as log])
-  (:import [com.sun.jna Callback CallbackReference Pointer NativeLibrary Function]))
+  (:import [com.sun.jna Callback CallbackReference Pointer NativeLibrary Function]
+           [java.util.concurrent.atomic AtomicBoolean AtomicLong AtomicReferenceArray LongAdder]
+           [java.util.concurrent.locks LockSupport]))
+
+(def log-levels
+  "PJ_LOG_* level for each keyword accepted by log-level->int."
+  {:none fndefs/PJ_LOG_NONE
+   :error fndefs/PJ_LOG_ERROR
+   :debug fndefs/PJ_LOG_DEBUG
+   :trace fndefs/PJ_LOG_TRACE
+   :tell fndefs/PJ_LOG_TELL})
+
+(defn log-level->int
+  "PJ_LOG_* level for a keyword from log-levels or an integer level."
+  [level]
+  (if (keyword? level)
+    (or (get log-levels level)
+        (throw (ex-info "Unknown PROJ log level" {:level level :levels (keys log-levels)})))
+    (int level)))
+
+(defn- deliver-message
+  [level msg]
+  (case (long level)
+    1 (log/error msg)
+    2 (log/debug msg)
+    3 (log/trace msg)
+    (log/info msg)))
+
+;; --- Ring buffer ---
+;; Many producers (PROJ's calling threads) claim a slot by CAS on tail and
+;; publish the message with a volatile write; one consumer at a time (drain!
+;; holds the ring's monitor) reads slots in order from head. A claimed but
+;; not yet published slot stops the drain until the next pass.
+
+(defn- make-ring
+  [capacity]
+  (let [cap (max 2 (Long/highestOneBit (dec (* 2 (long capacity)))))]
+    {:capacity cap
+     :mask (dec cap)
+     :slots (AtomicReferenceArray. (int cap))
+     :levels (int-array cap)
+     :head (AtomicLong.)
+     :tail (AtomicLong.)}))
+
+(defn- offer!
+  "Put a message in the ring; false when it is full."
+  [ring level msg]
+  (let [^AtomicLong tail (:tail ring)
+        ^AtomicLong head (:head ring)
+        cap (long (:capacity ring))]
+    (loop []
+      (let [t (.get tail)]
+        (cond
+          (>= (- t (.get head)) cap) false
+          (.compareAndSet tail t (inc t))
+          (let [i (int (bit-and t (long (:mask ring))))]
+            (aset ^ints (:levels ring) i (int level))
+            (.set ^AtomicReferenceArray (:slots ring) i msg)
+            true)
+          :else (recur))))))
+
+(defn- drain!
+  "Hand every published message to (f level msg), in order. Returns the count."
+  [ring f]
+  (locking ring
+    (let [^AtomicReferenceArray slots (:slots ring)
+          ^ints levels (:levels ring)
+          ^AtomicLong head (:head ring)
+          mask (long (:mask ring))]
+      (loop [n 0]
+        (let [h (.get head)
+              i (int (bit-and h mask))
+              msg (.get slots i)]
+          (if (nil? msg)
+            n
+            (let [level (aget levels i)]
+              (.lazySet slots i nil)
+              (.set head (inc h))
+              (try
+                (f level msg)
+                (catch Throwable _))
+              (recur (inc n)))))))))
+
+;; --- Routing state ---
+
+(defonce ^:private counters
+  {:enqueued (LongAdder.)
+   :delivered (LongAdder.)
+   :dropped (LongAdder.)
+   :rate-limited (LongAdder.)})
+
+(defonce ^:private rate-window
+  {:second (AtomicLong. -1)
+   :count (AtomicLong.)})
+
+(defonce ^:private routing
+  (volatile! {:async? true
+              :rate-limit 1000
+              :ring (make-ring 4096)}))
+
+(defn- admit?
+  "Fixed one-second window: true while fewer than limit messages were seen."
+  [^long limit]
+  (or (<= limit 0)
+      (let [^AtomicLong window (:second rate-window)
+            ^AtomicLong cnt (:count rate-window)
+            now (quot (System/nanoTime) 1000000000)
+            seen (.get window)]
+        (when (and (not= now seen) (.compareAndSet window seen now))
+          (.set cnt 0))
+        (<= (.incrementAndGet cnt) limit))))
+
+(defn- deliver-counted
+  [level msg]
+  (.increment ^LongAdder (:delivered counters))
+  (deliver-message level msg))
+
+(defn flush!
+  "Deliver every buffered message on the calling thread. Returns the count."
+  []
+  (drain! (:ring @routing) deliver-counted))
+
+(defn- ring-empty?
+  [ring]
+  (== (.get ^AtomicLong (:tail ring)) (.get ^AtomicLong (:head ring))))
+
+;; The drain thread parks with no timeout once the buffer is empty. It raises
+;; waiting before its last emptiness check, and route! unparks it after
+;; publishing a message whenever waiting is set, so a message added between
+;; the check and the park still wakes it (unpark before park is not lost).
+(defonce ^:private waiting (AtomicBoolean.))
+
+(defonce ^:private drainer
+  (delay
+    (doto (Thread.
+           ^Runnable
+           (fn []
+             (loop []
+               (when (zero? (long (flush!)))
+                 (.set ^AtomicBoolean waiting true)
+                 (when (ring-empty? (:ring @routing))
+                   (LockSupport/park))
+                 (.set ^AtomicBoolean waiting false))
+               (recur)))
+           "proj-log-drain")
+      (.setDaemon true)
+      (.start))))
+
+(defn route!
+  "Handle one PROJ message: buffer it for the drain thread, or log it directly
+   when routing is synchronous. Never blocks."
+  [level msg]
+  (let [{:keys [async? rate-limit ring]} @routing]
+    (cond
+      (not (admit? (long rate-limit)))
+      (.increment ^LongAdder (:rate-limited counters))
+
+      (not async?)
+      (deliver-counted level msg)
+
+      (offer! ring level msg)
+      (let [^Thread t (force drainer)]
+        (.increment ^LongAdder (:enqueued counters))
+        (when (.get ^AtomicBoolean waiting)
+          (LockSupport/unpark t)))
+
+      :else
+      (.increment ^LongAdder (:dropped counters)))))
+
+(defn configure-routing!
+  "Change how messages reach clojure.tools.logging; keys not given are kept.
+   - :async?      buffer and log from the drain thread (default true); false
+                  logs on PROJ's calling thread
+   - :rate-limit  messages accepted per second across all contexts (default
+                  1000); 0 or less for no limit
+   - :capacity    ring buffer size, rounded up to a power of two (default 4096).
+                  Buffered messages are delivered before the buffer is replaced.
+   Returns the new settings."
+  [{:keys [capacity] :as opts}]
+  (let [old (:ring @routing)]
+    (vswap! routing merge
+            (select-keys opts [:async? :rate-limit])
+            (when capacity {:ring (make-ring capacity)}))
+    (when capacity
+      (drain! old deliver-counted))
+    (dissoc (assoc @routing :capacity (:capacity (:ring @routing))) :ring)))
 
-(def ^:dynamic *runtime-log-level*
-  "When non-nil, PROJ log messages are output at this level (e.g. :debug, :trace).
-   When nil, only errors are logged."
-  nil)
+(defn routing-stats
+  "Counters since load: :enqueued, :delivered, :dropped (buffer full),
+   :rate-limited, plus :pending messages and the buffer :capacity."
+  []
+  (let [ring (:ring @routing)]
+    {:enqueued (.sum ^LongAdder (:enqueued counters))
+     :delivered (.sum ^LongAdder (:delivered counters))
+     :dropped (.sum ^LongAdder (:dropped counters))
+     :rate-limited (.sum ^LongAdder (:rate-limited counters))
+     :pending (- (.get ^AtomicLong (:tail ring)) (.get ^AtomicLong (:head ring)))
+     :capacity (:capacity ring)}))
 
 ;; void (*PJ_LOG_FUNC)(void *user_data, int level, const char *message)
 (gen-interface
@@ -28,17 +229,10 @@
 
 (defn create-log-callback
   "Creates a JNA Callback implementing ProjLogCallback interface.
-  PROJ log levels: 1=ERROR, 2=DEBUG, 3=TRACE. The *runtime-log-level* dynamic var
-  gates non-error output: when nil, only errors are logged; when set (e.g. :debug),
-  all levels are logged at that Clojure log level."
+  PROJ log levels: 1=ERROR, 2=DEBUG, 3=TRACE. By default messages go through
+  route!; log-fn, when given, is called directly on PROJ's calling thread."
   ([]
-   (create-log-callback
-    (fn [level msg]
-      (case (long level)
-        1 (log/error msg)
-        2 (when *runtime-log-level* (log/log *runtime-log-level* msg))
-        3 (when *runtime-log-level* (log/log *runtime-log-level* msg))
-        (when *runtime-log-level* (log/log *runtime-log-level* msg))))))
+   (create-log-callback route!))
   ([log-fn]
    (reify net.willcohen.proj.impl.ProjLogCallback
      (invoke [_ _user-data level message]
@@ -71,15 +265,16 @@
 (defn setup-logging!
   "Set up PROJ logging callback on a context via direct JNA NativeLibrary.getFunction.
   Bypasses the dtype-next FFI layer because proj_log_func takes a callback pointer,
-  not a regular FFI argument. Sets default log level to PJ_LOG_ERROR; bind
-  *runtime-log-level* for more verbose output."
-  [ctx-ptr]
-  (let [cb @log-callback-holder
-        cb (or cb (do (get-log-callback) @log-callback-holder))
-        raw-ctx (ptr-value/ptr-value ctx-ptr)
-        lib (NativeLibrary/getInstance "proj")
-        log-func (.getFunction lib "proj_log_func")
-        log-level (.getFunction lib "proj_log_level")]
-    (.invoke log-func Void/TYPE (object-array [(Pointer. raw-ctx) nil cb]))
-    ;; Default to ERROR level - set *runtime-log-level* to :info or :debug for more output
-    (.invoke log-level Integer/TYPE (object-array [(Pointer. raw-ctx) (int fndefs/PJ_LOG_ERROR)]))))
+  not a regular FFI argument. Sets the context's level to PJ_LOG_ERROR, or to
+  level (a keyword from log-levels or an integer) when given."
+  ([ctx-ptr]
+   (setup-logging! ctx-ptr fndefs/PJ_LOG_ERROR))
+  ([ctx-ptr level]
+   (let [cb @log-callback-holder
+         cb (or cb (do (get-log-callback) @log-callback-holder))
+         raw-ctx (ptr-value/ptr-value ctx-ptr)
+         lib (NativeLibrary/getInstance "proj")
+         log-func (.getFunction lib "proj_log_func")
+         log-level (.getFunction lib "proj_log_level")]
+     (.invoke log-func Void/TYPE (object-array [(Pointer. raw-ctx) nil cb]))
+     (.invoke log-level Integer/TYPE (object-array [(Pointer. raw-ctx) (log-level->int level)])))))
@@ -14,16 +14,28 @@
   - read_range: Subsequent range requests using an existing handle
 
   Handle state (URL + response headers) is stored in the `handles` atom, keyed by
-  integer handle ID."
+  integer handle ID.
+
+  Every range goes through net.willcohen.proj.impl.range-cache first, so
+  repeated reads of the same grid blocks are served from memory or a local
+  directory instead of the network, concurrent reads of one block share a
+  request, and sequential reads trigger asynchronous read-ahead. Requests
+  per host are bounded, and each is abandoned after :request-timeout-ms so a
+  hung server cannot hold a host's slots forever. The cache is off, and
+  every range is sent as is, until configure-range-cache! is called."
   (:require [clojure.string :as str]
             [clojure.tools.logging :as log]
             [net.willcohen.proj.wasm :as wasm]
+            [net.willcohen.proj.impl.range-cache :as range-cache]
             [net.willcohen.proj.macros :refer [tsgcd]]
             [tech.v3.datatype.ffi.ptr-value :as ptr-value])
   (:import [com.sun.jna Callback CallbackReference Pointer NativeLibrary]
            [org.graalvm.polyglot.proxy ProxyExecutable]
            [java.net URI]
-           [java.net.http HttpClient HttpClient$Redirect HttpRequest HttpResponse$BodyHandlers]))
+           [java.net.http HttpClient HttpClient$Redirect HttpRequest HttpResponse HttpResponse$BodyHandlers]
+           [java.time Duration]
+           [java.util.concurrent CompletableFuture ConcurrentHashMap Semaphore TimeUnit TimeoutException]
+           [java.util.function BiFunction Function]))
 
 ;; JNA callback interfaces for proj_context_set_network_callbacks (proj.h:516-553)
 (gen-interface
@@ -75,22 +87,146 @@
         (.followRedirects HttpClient$Redirect/NORMAL)
         (.build))))
 
-(defn- make-range-request [url offset size-to-read]
+(defonce ^:private range-cache-state
+  (atom {:enabled? false
+         :max-in-flight-per-host 6
+         :request-timeout-ms 30000
+         :permits (ConcurrentHashMap.)
+         :cache (range-cache/make-cache {})}))
+
+(defn- host-permits
+  "Semaphore bounding the requests in flight to url's host."
+  ^Semaphore [state url]
+  (.computeIfAbsent ^ConcurrentHashMap (:permits state)
+                    (str (.getAuthority (URI. url)))
+                    (reify Function
+                      (apply [_ _]
+                        (Semaphore. (int (max 1 (long (:max-in-flight-per-host state)))) true)))))
+
+(defn- range-request
+  ^HttpRequest [url start end timeout-ms]
+  (-> (HttpRequest/newBuilder)
+      (.uri (URI. url))
+      (.header "Range" (format "bytes=%d-%d" start end))
+      (.timeout (Duration/ofMillis (long timeout-ms)))
+      (.GET)
+      (.build)))
+
+(defn- send-bounded
+  "Send the range request, returning a CompletableFuture of the response that
+   fails with a TimeoutException after timeout-ms. Request.timeout only covers
+   the wait for headers; this also bounds reading the body."
+  ^CompletableFuture [url start end timeout-ms]
+  (.orTimeout (.sendAsync ^HttpClient @http-client (range-request url start end timeout-ms)
+                          (HttpResponse$BodyHandlers/ofByteArray))
+              (long timeout-ms) TimeUnit/MILLISECONDS))
+
+(defn- response->map
+  [^HttpResponse response]
+  {:status (.statusCode response)
+   :body (.body response)
+   :headers (parse-headers (.headers response))})
+
+(defn- send-range-request
+  "GET the inclusive byte range [start end] of url, waiting for a free slot
+   when the host already has :max-in-flight-per-host requests in flight.
+   Waiting for the slot and the request itself are each bounded by
+   :request-timeout-ms; a timed-out request is cancelled and its slot freed."
+  [url start end]
   (try
-    (let [range-header (format "bytes=%d-%d" offset (+ offset size-to-read -1))
-          request (-> (HttpRequest/newBuilder)
-                      (.uri (URI. url))
-                      (.header "Range" range-header)
-                      (.GET)
-                      (.build))
-          response (.send @http-client request (HttpResponse$BodyHandlers/ofByteArray))]
-      {:status (.statusCode response)
-       :body (.body response)
-       :headers (parse-headers (.headers response))})
+    (let [state @range-cache-state
+          timeout-ms (long (:request-timeout-ms state))
+          permits (host-permits state url)]
+      (when-not (.tryAcquire permits timeout-ms TimeUnit/MILLISECONDS)
+        (throw (TimeoutException. (str "No free request slot for " url " within " timeout-ms " ms"))))
+      (let [fut (send-bounded url start end timeout-ms)]
+        (try
+          (response->map (.get fut))
+          (catch java.util.concurrent.ExecutionException e
+            (.cancel fut true)
+            (throw (or (.getCause e) e)))
+          (finally
+            (.release permits)))))
     (catch Exception e
       (log/error e "Network request failed" {:url url})
       {:status 0 :body nil :headers {}})))
 
+(defn- send-range-request-async
+  "Like send-range-request through HttpClient.sendAsync, returning a
+   CompletableFuture of the response map; nil, without sending, when the host
+   has no free slot. Used for read-ahead, which is never worth waiting for."
+  [url start end]
+  (let [state @range-cache-state
+        permits (host-permits state url)]
+    (when (.tryAcquire permits)
+      (try
+        (.handle (send-bounded url start end (:request-timeout-ms state))
+                 (reify BiFunction
+                   (apply [_ response e]
+                     (.release permits)
+                     (if e
+                       (do (log/debug e "Read-ahead request failed" {:url url})
+                           {:status 0 :body nil :headers {}})
+                       (response->map response)))))
+        (catch Exception e
+          (.release permits)
+          (log/debug e "Read-ahead request failed" {:url url})
+          nil)))))
+
+(defn configure-range-cache!
+  "Replace the range cache with one built from opts, dropping its in-memory
+   blocks; blocks in :directory are picked up again. Until this is first
+   called the cache is disabled. Options:
+   - :enabled?                false sends every range to the network (default
+                              true, so configuring the cache turns it on)
+   - :directory               directory for cached blocks; nil (the default)
+                              keeps them in memory only
+   - :max-bytes               bound on the directory's size (default 1 GiB)
+   - :memory-bytes            bound on the in-memory tier (default 32 MiB)
+   - :block-size              alignment and size of cached blocks (default 16384)
+   - :ttl-seconds             how long a file's ETag/Last-Modified is trusted
+                              before the next range is fetched again to confirm
+                              it (default 86400)
+   - :readahead?              prefetch ahead of sequential reads (default true)
+   - :readahead-after         adjacent reads before read-ahead starts (default 2)
+   - :readahead-blocks        most blocks fetched ahead at once (default 16)
+   - :max-in-flight-per-host  concurrent requests per host, read-ahead
+                              included (default 6)
+   - :request-timeout-ms      bound on waiting for a slot and on each request,
+                              after which the read fails (default 30000)
+   Returns the settings in effect."
+  [opts]
+  (let [opts (merge range-cache/defaults
+                    {:enabled? true :max-in-flight-per-host 6 :request-timeout-ms 30000}
+                    opts)]
+    (reset! range-cache-state
+            {:enabled? (boolean (:enabled? opts))
+             :max-in-flight-per-host (:max-in-flight-per-host opts)
+             :request-timeout-ms (:request-timeout-ms opts)
+             :permits (ConcurrentHashMap.)
+             :cache (range-cache/make-cache (dissoc opts :enabled? :max-in-flight-per-host
+                                                    :request-timeout-ms))})
+    (update opts :directory #(some-> % str))))
+
+(defn range-cache-stats
+  "Counters of the current range cache; see range-cache/stats."
+  []
+  (assoc (range-cache/stats (:cache @range-cache-state))
+         :enabled (:enabled? @range-cache-state)))
+
+(defn fetch-range
+  "Bytes [offset, offset + size-to-read) of url as {:status :body :headers},
+   through the range cache when it is enabled. This is what every open and
+   read_range callback calls."
+  [url offset size-to-read]
+  (let [{:keys [enabled? cache]} @range-cache-state]
+    (if enabled?
+      (range-cache/fetch! cache url offset size-to-read send-range-request send-range-request-async)
+      (send-range-request url offset (+ offset size-to-read -1)))))
+
+(defn- make-range-request [url offset size-to-read]
+  (fetch-range url offset size-to-read))
+
 (defn- create-open-callback
   "Creates the 'open' ProxyExecutable for PROJ network access.
   Makes an initial HTTP range request for a grid file URL, copies response bytes
@@ -341,7 +477,14 @@
                               (or (.getMessage e) "error"))
           0)))))
 
-(defonce ^:private native-callbacks-holder (atom nil))
+;; One set of callbacks shared by every context. JNA frees a callback's native
+;; stub when the Callback object is collected, so these must outlive all
+;; contexts that were given them (including clones, which copy the pointers).
+(defonce ^:private native-callbacks
+  (delay [(create-native-open-callback)
+          (create-native-close-callback)
+          (create-native-get-header-callback)
+          (create-native-read-range-callback)]))
 
 (defn setup-native-network-callbacks!
   "Register JNA network callbacks with a native PROJ context.
@@ -349,11 +492,7 @@
   [ctx-ptr]
   (log/info "Setting up JNA network callbacks...")
   (let [raw-ctx (ptr-value/ptr-value ctx-ptr)
-        open-cb (create-native-open-callback)
-        close-cb (create-native-close-callback)
-        header-cb (create-native-get-header-callback)
-        range-cb (create-native-read-range-callback)]
-    (reset! native-callbacks-holder [open-cb close-cb header-cb range-cb])
+        [open-cb close-cb header-cb range-cb] @native-callbacks]
     (let [lib (NativeLibrary/getInstance "proj")
           set-callbacks (.getFunction lib "proj_context_set_network_callbacks")
           result (.invoke set-callbacks Integer/TYPE
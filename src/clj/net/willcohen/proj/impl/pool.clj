@@ -0,0 +1,138 @@
+(ns net.willcohen.proj.impl.pool
+  "Size-classed pool of native coordinate buffers.
+
+   Buffers are grouped into power-of-two size classes (capacity in
+   coordinates). A request for n coordinates is served from the smallest class
+   that fits, so a buffer released after one request can be reused by any later
+   request of a similar size.
+
+   Released buffers go to a shared per-class queue, which every thread draws
+   from, and are freed immediately once the pool holds max-pooled-bytes of idle
+   buffers. Nothing is cached per thread, so idle buffers never outlive the
+   pool's accounting when threads come and go, and clear! frees all of them.
+   Leased buffers are tracked by address so release! can find
+   their size class and reject buffers that did not come from the pool or were
+   already released.
+
+   The pool is backend-agnostic; the caller supplies:
+   - :allocate (fn [capacity]) -> storage for capacity coordinates
+   - :view     (fn [storage n]) -> the n-coordinate buffer handed out
+   - :address  (fn [buffer]) -> native address of a buffer from :view
+   - :free     (fn [storage]) releasing storage the pool drops; it is called
+               deterministically, never left to the GC"
+  (:import [java.util.concurrent ConcurrentHashMap ConcurrentLinkedDeque]
+           [java.util.concurrent.atomic AtomicLong LongAdder]))
+
+(def coord-bytes
+  "Size of one PJ_COORD."
+  32)
+
+(def ^:private min-class 4)
+(def ^:private class-count 40)
+
+(defn size-class
+  "Smallest size class (log2 of capacity in coordinates) holding n coordinates."
+  ^long [^long n]
+  (max (long min-class) (- 64 (Long/numberOfLeadingZeros (dec (max n 1))))))
+
+(defn class-capacity
+  "Capacity in coordinates of size class k."
+  ^long [^long k]
+  (bit-shift-left 1 k))
+
+(defn make-pool
+  "Create a pool from backend callbacks (see namespace doc) and options:
+   - :max-pooled-bytes  cap on idle bytes across all size classes (default 64 MiB)"
+  [{:keys [allocate view address free max-pooled-bytes]
+    :or {max-pooled-bytes (* 64 1024 1024)}}]
+  (when-not free
+    (throw (ex-info "Pool requires a :free callback" {})))
+  {:allocate allocate
+   :view view
+   :address address
+   :free free
+   :max-pooled-bytes (long max-pooled-bytes)
+   :shared (let [a (object-array class-count)]
+             (dotimes [k class-count] (aset a k (ConcurrentLinkedDeque.)))
+             a)
+   :leased (ConcurrentHashMap.)
+   :hits (LongAdder.)
+   :misses (LongAdder.)
+   :releases (LongAdder.)
+   :drops (LongAdder.)
+   :outstanding-bytes (AtomicLong.)
+   :pooled-bytes (AtomicLong.)})
+
+(defn- class-bytes ^long [^long k]
+  (* (long coord-bytes) (class-capacity k)))
+
+(defn- take-idle
+  [pool ^long k]
+  (when-let [storage (.pollFirst ^ConcurrentLinkedDeque (aget ^objects (:shared pool) k))]
+    (.addAndGet ^AtomicLong (:pooled-bytes pool) (- (class-bytes k)))
+    storage))
+
+(defn- reserve-idle
+  "Account for bytes about to become idle; false if that would exceed the cap."
+  [pool ^long bytes]
+  (let [^AtomicLong pooled (:pooled-bytes pool)
+        cap (long (:max-pooled-bytes pool))]
+    (loop []
+      (let [cur (.get pooled)]
+        (cond
+          (> (+ cur bytes) cap) false
+          (.compareAndSet pooled cur (+ cur bytes)) true
+          :else (recur))))))
+
+(defn acquire!
+  "Lease a buffer for n coordinates. Its contents are unspecified."
+  [pool n]
+  (let [k (size-class n)
+        idle (take-idle pool k)
+        storage (or idle ((:allocate pool) (class-capacity k)))
+        buf ((:view pool) storage n)]
+    (.add ^LongAdder (if idle (:hits pool) (:misses pool)) 1)
+    (.put ^ConcurrentHashMap (:leased pool) (long ((:address pool) buf)) [k storage])
+    (.addAndGet ^AtomicLong (:outstanding-bytes pool) (class-bytes k))
+    buf))
+
+(defn release!
+  "Return a leased buffer to the pool. The buffer must not be used afterwards."
+  [pool buf]
+  (let [addr (long ((:address pool) buf))
+        [k storage] (or (.remove ^ConcurrentHashMap (:leased pool) addr)
+                        (throw (ex-info "Coordinate buffer is not leased from this pool"
+                                        {:address addr})))
+        k (long k)
+        bytes (class-bytes k)]
+    (.addAndGet ^AtomicLong (:outstanding-bytes pool) (- bytes))
+    (.add ^LongAdder (:releases pool) 1)
+    (if (reserve-idle pool bytes)
+      (.addFirst ^ConcurrentLinkedDeque (aget ^objects (:shared pool) k) storage)
+      (do (.add ^LongAdder (:drops pool) 1)
+          ((:free pool) storage)))
+    nil))
+
+(defn clear!
+  "Free every idle buffer. Leased buffers are unaffected and return to the
+   pool (or are freed, if over the cap) when released."
+  [pool]
+  (dotimes [k class-count]
+    (loop []
+      (when-let [storage (take-idle pool k)]
+        (.add ^LongAdder (:drops pool) 1)
+        ((:free pool) storage)
+        (recur)))))
+
+(defn stats
+  "Pool metrics: acquisitions served from idle buffers (:hits) or by allocating
+   (:misses), :releases, :drops (buffers freed instead of pooled),
+   :outstanding-buffers, :outstanding-bytes leased, and :pooled-bytes idle."
+  [pool]
+  {:hits (.sum ^LongAdder (:hits pool))
+   :misses (.sum ^LongAdder (:misses pool))
+   :releases (.sum ^LongAdder (:releases pool))
+   :drops (.sum ^LongAdder (:drops pool))
+   :outstanding-buffers (.size ^ConcurrentHashMap (:leased pool))
+   :outstanding-bytes (.get ^AtomicLong (:outstanding-bytes pool))
+   :pooled-bytes (.get ^AtomicLong (:pooled-bytes pool))})
@@ -0,0 +1,518 @@
+(ns net.willcohen.proj.impl.range-cache
+  "Shared cache of grid byte ranges for the network callbacks.
+
+   PROJ reads network grids as HTTP range requests through the open and
+   read_range callbacks in net.willcohen.proj.impl.network, one request per
+   call, from every context and backend alike. This cache sits between those
+   callbacks and HttpClient:
+
+   - Files are cut into aligned blocks (16 KiB by default, PROJ's own chunk
+     size). A block is keyed by URL, the file's validator (ETag, else
+     Last-Modified) and block index.
+   - Per URL the cache keeps the validator, the file size and when they were
+     last confirmed. While that is younger than :ttl-seconds, a range whose
+     blocks are all cached is answered locally with the 206 status and
+     Content-Range header PROJ expects.
+   - Otherwise the block-aligned span around the range is requested, every
+     whole block of the reply is stored, and the requested bytes are handed
+     back. A changed validator drops the URL's old blocks.
+   - Blocks live in an in-memory LRU tier (:memory-bytes) and, when
+     :directory is set, in one file per block there, evicted least recently
+     used first beyond :max-bytes. A block file is named by a 64-bit hash of
+     the URL and validator plus the block index. File modification times
+     record use, so the order survives restarts.
+   - Misses are single-flight per block: a thread that needs a block another
+     thread (or a read-ahead) is already fetching waits for that fetch and
+     reads the result from the cache instead of sending its own request.
+   - After :readahead-after adjacent reads of a file, the blocks following
+     the last read are fetched asynchronously, doubling per further adjacent
+     read up to :readahead-blocks, so PROJ's next read_range finds them
+     cached or in flight.
+
+   Nothing here talks HTTP; fetch! takes the functions that do."
+  (:require [clojure.edn :as edn]
+            [clojure.string :as str])
+  (:import [java.io File]
+           [java.nio.file Files OpenOption StandardCopyOption]
+           [java.nio.file.attribute FileAttribute FileTime]
+           [java.util LinkedHashMap Map$Entry]
+           [java.util.concurrent CompletableFuture ConcurrentHashMap TimeUnit]
+           [java.util.function BiConsumer]
+           [java.util.concurrent.atomic LongAdder]))
+
+(def defaults
+  "Options used by make-cache for keys not given."
+  {:memory-bytes (* 32 1024 1024)
+   :max-bytes (* 1024 1024 1024)
+   :block-size 16384
+   :ttl-seconds 86400
+   :directory nil
+   :readahead? true
+   :readahead-after 2
+   :readahead-blocks 16})
+
+(defn- access-ordered-map
+  ^LinkedHashMap []
+  (LinkedHashMap. 16 0.75 true))
+
+(defn- hash-hex
+  "64-bit FNV-1a of s as 16 hex digits, for file names."
+  ^String [^String s]
+  (let [h (loop [i 0 h (unchecked-long -3750763034362895579)]
+            (if (< i (.length s))
+              (recur (inc i) (unchecked-multiply (bit-xor h (long (.charAt s i))) 1099511628211))
+              h))
+        x (Long/toHexString h)]
+    (str (subs "0000000000000000" (count x)) x)))
+
+(defn- block-key
+  [url validator index]
+  (str url "\n" validator "\n" index))
+
+(defn make-cache
+  "Create a cache. Options (see namespace doc and defaults): :directory,
+   :max-bytes, :memory-bytes, :block-size, :ttl-seconds, :readahead?,
+   :readahead-after, :readahead-blocks."
+  [opts]
+  (let [{:keys [directory] :as opts} (merge defaults opts)
+        dir (when directory
+              (let [d (File. (str directory))]
+                (.mkdirs d)
+                d))
+        disk (access-ordered-map)]
+    (when dir
+      ;; Oldest first, so the access-ordered map starts in LRU order
+      (doseq [^File f (sort-by #(.lastModified ^File %)
+                               (filter #(str/ends-with? (.getName ^File %) ".blk")
+                                       (.listFiles dir)))]
+        (.put disk (.getName f) (.length f))))
+    {:opts opts
+     :dir dir
+     :memory (access-ordered-map)
+     :memory-bytes (long-array [0])
+     :disk disk
+     :disk-bytes (long-array [(reduce + 0 (vals disk))])
+     :metas (ConcurrentHashMap.)
+     :flights (ConcurrentHashMap.)
+     :streams (ConcurrentHashMap.)
+     :counters {:memory-hits (LongAdder.)
+                :disk-hits (LongAdder.)
+                :misses (LongAdder.)
+                :bytes-from-cache (LongAdder.)
+                :bytes-from-network (LongAdder.)
+                :stores (LongAdder.)
+                :evictions (LongAdder.)
+                :coalesced (LongAdder.)
+                :prefetches (LongAdder.)
+                :prefetched-bytes (LongAdder.)
+                :prefetches-declined (LongAdder.)}}))
+
+(defn- count! [cache k n]
+  (.add ^LongAdder (get-in cache [:counters k]) (long n)))
+
+;; --- Metadata ---
+
+(defn- meta-file ^File [cache url]
+  (when-let [^File dir (:dir cache)]
+    (File. dir (str (hash-hex url) ".meta"))))
+
+(defn- write-atomic!
+  [^File target ^bytes data]
+  (let [tmp (File/createTempFile (.getName target) ".tmp" (.getParentFile target))]
+    (Files/write (.toPath tmp) data ^"[Ljava.nio.file.OpenOption;" (make-array OpenOption 0))
+    (Files/move (.toPath tmp) (.toPath target)
+                (into-array StandardCopyOption [StandardCopyOption/REPLACE_EXISTING
+                                                StandardCopyOption/ATOMIC_MOVE]))))
+
+(defn- url-meta
+  [cache url]
+  (let [^ConcurrentHashMap metas (:metas cache)]
+    (or (.get metas url)
+        (when-let [^File f (meta-file cache url)]
+          (when (.exists f)
+            (try
+              (let [m (edn/read-string (slurp f))]
+                (.put metas url m)
+                m)
+              (catch Exception _ nil)))))))
+
+(defn- put-meta!
+  [cache url m]
+  (.put ^ConcurrentHashMap (:metas cache) url m)
+  (when-let [f (meta-file cache url)]
+    (write-atomic! f (.getBytes (pr-str m) "UTF-8"))))
+
+;; --- Blocks ---
+
+(defn- block-file
+  "File of block i of url's version validator."
+  ^File [cache url validator i]
+  (File. ^File (:dir cache) (str (hash-hex (str url "\n" validator)) "-" (Long/toHexString i) ".blk")))
+
+(defn- evict-memory!
+  [cache]
+  (let [^LinkedHashMap memory (:memory cache)
+        ^longs used (:memory-bytes cache)
+        limit (long (get-in cache [:opts :memory-bytes]))]
+    (while (and (> (aget used 0) limit) (not (.isEmpty memory)))
+      (let [it (.iterator (.entrySet memory))
+            ^Map$Entry e (.next it)]
+        (.remove it)
+        (aset used 0 (- (aget used 0) (alength ^bytes (.getValue e))))))))
+
+(defn- remember!
+  "Put a block in the memory tier."
+  [cache k ^bytes data]
+  (let [^LinkedHashMap memory (:memory cache)
+        ^longs used (:memory-bytes cache)]
+    (locking memory
+      (when-let [^bytes old (.put memory k data)]
+        (aset used 0 (- (aget used 0) (alength old))))
+      (aset used 0 (+ (aget used 0) (alength data)))
+      (evict-memory! cache))))
+
+(defn- evict-disk!
+  "Drop least recently used block files beyond :max-bytes. Returns their files."
+  [cache]
+  (let [^LinkedHashMap disk (:disk cache)
+        ^longs used (:disk-bytes cache)
+        limit (long (get-in cache [:opts :max-bytes]))]
+    (locking disk
+      (loop [victims []]
+        (if (and (> (aget used 0) limit) (not (.isEmpty disk)))
+          (let [it (.iterator (.entrySet disk))
+                ^Map$Entry e (.next it)]
+            (.remove it)
+            (aset used 0 (- (aget used 0) (long (.getValue e))))
+            (count! cache :evictions 1)
+            (recur (conj victims (.getKey e))))
+          victims)))))
+
+(defn- forget-file!
+  [cache ^String name]
+  (let [^LinkedHashMap disk (:disk cache)
+        ^longs used (:disk-bytes cache)]
+    (locking disk
+      (when-let [size (.remove disk name)]
+        (aset used 0 (- (aget used 0) (long size)))))))
+
+(defn- store-block!
+  [cache url validator i ^bytes data]
+  (remember! cache (block-key url validator i) data)
+  (count! cache :stores 1)
+  (when (:dir cache)
+    (let [f (block-file cache url validator i)
+          ^LinkedHashMap disk (:disk cache)
+          ^longs used (:disk-bytes cache)]
+      (write-atomic! f data)
+      (locking disk
+        (when-let [old (.put disk (.getName f) (alength data))]
+          (aset used 0 (- (aget used 0) (long old))))
+        (aset used 0 (+ (aget used 0) (alength data))))
+      (doseq [name (evict-disk! cache)]
+        (.delete (File. ^File (:dir cache) ^String name))))))
+
+(defn- read-block
+  "Contents of f, or nil if it is gone. Blocks are small enough that a plain
+   read beats setting up a memory map for each."
+  ^bytes [^File f]
+  (try
+    (Files/readAllBytes (.toPath f))
+    (catch java.io.IOException _ nil)))
+
+(defn- load-block
+  "Block i of url's version validator from memory or disk, or nil."
+  ^bytes [cache url validator i]
+  (let [^LinkedHashMap memory (:memory cache)
+        k (block-key url validator i)]
+    (if-let [data (locking memory (.get memory k))]
+      (do (count! cache :memory-hits 1) data)
+      (when (:dir cache)
+        (let [f (block-file cache url validator i)
+              ^LinkedHashMap disk (:disk cache)]
+          (when (locking disk (.get disk (.getName f)))
+            (if-let [data (read-block f)]
+              (do (Files/setLastModifiedTime (.toPath f) (FileTime/fromMillis (System/currentTimeMillis)))
+                  (count! cache :disk-hits 1)
+                  (remember! cache k data)
+                  data)
+              (do (forget-file! cache (.getName f)) nil))))))))
+
+(defn- drop-blocks!
+  "Remove every block of a previous version of url."
+  [cache url old]
+  (let [bs (long (get-in cache [:opts :block-size]))
+        n (quot (+ (long (:size old)) (dec bs)) bs)
+        ^LinkedHashMap memory (:memory cache)
+        ^longs used (:memory-bytes cache)]
+    (dotimes [i n]
+      (let [k (block-key url (:validator old) i)]
+        (locking memory
+          (when-let [^bytes data (.remove memory k)]
+            (aset used 0 (- (aget used 0) (alength data)))))
+        (when (:dir cache)
+          (let [f (block-file cache url (:validator old) i)]
+            (forget-file! cache (.getName f))
+            (.delete f)))))))
+
+;; --- Ranges ---
+
+(defn- parse-content-range
+  [s]
+  (when-let [[_ a b total] (and s (re-matches #"bytes (\d+)-(\d+)/(\d+)" (str/trim s)))]
+    [(Long/parseLong a) (Long/parseLong b) (Long/parseLong total)]))
+
+(defn- cached-headers
+  [m start end]
+  (cond-> {"content-range" (format "bytes %d-%d/%d" start end (:size m))
+           "content-length" (str (inc (- end start)))
+           "content-type" "application/octet-stream"
+           "accept-ranges" "bytes"}
+    (:etag m) (assoc "etag" (:etag m))
+    (:last-modified m) (assoc "last-modified" (:last-modified m))))
+
+(defn- lookup
+  [cache url ^long start ^long end]
+  (let [m (url-meta cache url)
+        bs (long (get-in cache [:opts :block-size]))
+        ttl-ms (* 1000 (long (get-in cache [:opts :ttl-seconds])))]
+    (when (and m
+               (< (- (System/currentTimeMillis) (long (:checked-at m))) ttl-ms)
+               (< start (long (:size m))))
+      (let [size (long (:size m))
+            end (min end (dec size))
+            out (byte-array (inc (- end start)))]
+        (when (loop [i (quot start bs)]
+                (if (> i (quot end bs))
+                  true
+                  (let [^bytes block (load-block cache url (:validator m) i)
+                        block-start (* i bs)]
+                    (when (and block (= (alength block) (min bs (- size block-start))))
+                      (let [from (max start block-start)
+                            to (min end (+ block-start (alength block) -1))]
+                        (System/arraycopy block (- from block-start) out (- from start) (inc (- to from))))
+                      (recur (inc i))))))
+          {:status 206 :body out :headers (cached-headers m start end)})))))
+
+(defn- store-response!
+  "Record a 206 reply for [start end] of url and keep its whole blocks."
+  [cache url response]
+  (let [headers (:headers response)
+        [start end size] (parse-content-range (get headers "content-range"))
+        etag (get headers "etag")
+        last-modified (get headers "last-modified")
+        validator (or etag last-modified)
+        ^bytes body (:body response)
+        bs (long (get-in cache [:opts :block-size]))]
+    (when (and start validator body (= (alength body) (inc (- (long end) (long start)))))
+      (let [old (url-meta cache url)]
+        (when (and old (not= (:validator old) validator))
+          (drop-blocks! cache url old))
+        (put-meta! cache url {:etag etag :last-modified last-modified :validator validator
+                              :size size :checked-at (System/currentTimeMillis)})
+        (loop [i (quot (+ (long start) (dec bs)) bs)]
+          (let [block-start (* i bs)
+                block-end (dec (min (+ block-start bs) (long size)))]
+            (when (and (< block-start (long size)) (<= block-end (long end)))
+              (store-block! cache url validator i
+                            (java.util.Arrays/copyOfRange body (int (- block-start (long start)))
+                                                          (int (inc (- block-end (long start))))))
+              (recur (inc i)))))))))
+
+(defn- slice-response
+  "response trimmed to bytes [offset end] of the file, with headers to match."
+  [response ^long offset ^long end]
+  (let [^bytes body (:body response)
+        [start _ size] (or (parse-content-range (get-in response [:headers "content-range"]))
+                           (when body [0 nil (alength body)]))]
+    (if (and body start (<= (long start) offset))
+      (let [from (- offset (long start))
+            to (min (alength body) (inc (- end (long start))))]
+        (if (and (zero? from) (= to (alength body)))
+          response
+          (let [part (java.util.Arrays/copyOfRange body (int (max 0 (min from to))) (int to))
+                last-byte (+ offset (alength part) -1)]
+            (-> response
+                (assoc :body part)
+                (assoc-in [:headers "content-length"] (str (alength part)))
+                (cond-> (= 206 (:status response))
+                  (assoc-in [:headers "content-range"] (format "bytes %d-%d/%d" offset last-byte size)))))))
+      response)))
+
+(defn- cached-block?
+  "True when block i of url's current version is in either tier. Does not
+   count as a use."
+  [cache url i]
+  (let [m (url-meta cache url)
+        k (block-key url (:validator m) i)
+        ^LinkedHashMap memory (:memory cache)
+        ^LinkedHashMap disk (:disk cache)]
+    (or (locking memory (.containsKey memory k))
+        (and (:dir cache)
+             (locking disk (.containsKey disk (.getName (block-file cache url (:validator m) i))))))))
+
+(defn- cached-range
+  [cache url offset end]
+  (when-let [hit (try (lookup cache url offset end) (catch Exception _ nil))]
+    (count! cache :bytes-from-cache (alength ^bytes (:body hit)))
+    hit))
+
+;; --- Single flight ---
+;; A fetch registers a CompletableFuture per block it is about to request in
+;; :flights, keyed by URL and block index, and completes and removes them
+;; once the reply is stored. Flights carry no data; waiters read the cache.
+
+(defn- flight-key
+  [url i]
+  (str url "\n" i))
+
+(defn- await-flights!
+  "Wait for fetches in flight of blocks [first-block last-block] of url.
+   True if there were any."
+  [cache url first-block last-block]
+  (let [^ConcurrentHashMap flights (:flights cache)
+        pending (keep #(.get flights (flight-key url %)) (range first-block (inc (long last-block))))]
+    (doseq [^CompletableFuture f pending]
+      (try
+        (.get f 30 TimeUnit/SECONDS)
+        (catch Exception _)))
+    (boolean (seq pending))))
+
+(defn- claim-flight!
+  [cache url i]
+  (let [k (flight-key url i)]
+    (when (nil? (.putIfAbsent ^ConcurrentHashMap (:flights cache) k (CompletableFuture.)))
+      k)))
+
+(defn- land-flights!
+  [cache ks]
+  (doseq [k ks]
+    (when-let [^CompletableFuture f (.remove ^ConcurrentHashMap (:flights cache) k)]
+      (.complete f nil))))
+
+;; --- Read-ahead ---
+
+(defn- sequential-run
+  "Number of adjacent reads of url up to and including this one for blocks
+   [first-block last-block]; 0 when it does not continue the previous read."
+  [cache url first-block last-block]
+  (let [^ConcurrentHashMap streams (:streams cache)
+        [prev-last run] (.get streams url)
+        run (if (and prev-last (<= (long prev-last) (long first-block) (inc (long prev-last))))
+              (inc (long run))
+              0)]
+    (.put streams url [last-block run])
+    run))
+
+(defn- read-ahead!
+  "Start an asynchronous fetch of the uncached blocks after last-block when
+   url is being read sequentially. prefetch-fn is (fn [url start end]) ->
+   CompletableFuture of a response, or nil when it declines."
+  [cache url first-block last-block prefetch-fn]
+  (let [{:keys [readahead? readahead-after readahead-blocks block-size]} (:opts cache)
+        run (sequential-run cache url first-block last-block)
+        m (url-meta cache url)]
+    (when (and prefetch-fn readahead? m (>= run (long readahead-after)))
+      (let [bs (long block-size)
+            n-blocks (quot (+ (long (:size m)) (dec bs)) bs)
+            window (min (long readahead-blocks)
+                        (bit-shift-left 1 (min 20 (- run (long readahead-after)))))
+            candidates (range (inc (long last-block)) (min n-blocks (+ (long last-block) 1 window)))
+            ^ConcurrentHashMap flights (:flights cache)
+            start (first (remove #(or (cached-block? cache url %)
+                                      (.containsKey flights (flight-key url %)))
+                                 candidates))
+            claimed (when start
+                      (loop [i (long start) ks []]
+                        (if (and (< i (min n-blocks (+ (long last-block) 1 window)))
+                                 (not (cached-block? cache url i)))
+                          (if-let [k (claim-flight! cache url i)]
+                            (recur (inc i) (conj ks k))
+                            ks)
+                          ks)))]
+        (when (seq claimed)
+          (let [span-start (* bs (long start))
+                span-end (dec (min (long (:size m)) (* bs (+ (long start) (count claimed)))))
+                ^CompletableFuture fut (try
+                                         (prefetch-fn url span-start span-end)
+                                         (catch Exception _ nil))]
+            (if fut
+              (do (count! cache :prefetches 1)
+                  (.whenComplete fut
+                                 (reify BiConsumer
+                                   (accept [_ response _]
+                                     (try
+                                       (when-let [^bytes body (:body response)]
+                                         (count! cache :prefetched-bytes (alength body))
+                                         (count! cache :bytes-from-network (alength body)))
+                                       (when (= 206 (:status response))
+                                         (store-response! cache url response))
+                                       (catch Exception _)
+                                       (finally
+                                         (land-flights! cache claimed)))))))
+              (do (count! cache :prefetches-declined 1)
+                  (land-flights! cache claimed)))))))))
+
+(defn fetch!
+  "Bytes [offset, offset + size) of url, from the cache when possible.
+   fetch-fn is (fn [url start end]) -> {:status :body (byte[]) :headers (map of
+   lower-case name to value)} for the inclusive byte range; it is called with
+   the block-aligned span around the request on a miss. prefetch-fn, when
+   given, is the asynchronous variant used for read-ahead: it returns a
+   CompletableFuture of the same map, or nil to skip the read-ahead. Returns
+   the same shape as fetch-fn, with the body holding only the requested bytes."
+  ([cache url offset size fetch-fn]
+   (fetch! cache url offset size fetch-fn nil))
+  ([cache url offset size fetch-fn prefetch-fn]
+   (let [offset (long offset)
+         end (+ offset (long size) -1)
+         bs (long (get-in cache [:opts :block-size]))
+         first-block (quot offset bs)
+         last-block (quot end bs)
+         n-blocks (inc (- last-block first-block))
+         response (loop [attempt 0]
+                    (or (cached-range cache url offset end)
+                        (when (await-flights! cache url first-block last-block)
+                          (when-let [hit (cached-range cache url offset end)]
+                            (count! cache :coalesced 1)
+                            hit))
+                        (let [claimed (into [] (keep #(claim-flight! cache url %))
+                                            (range first-block (inc last-block)))]
+                          (if (and (< (count claimed) n-blocks) (< attempt 3))
+                            ;; Another fetch of some of these blocks started
+                            ;; since we looked; wait for it instead
+                            (do (land-flights! cache claimed)
+                                (recur (inc attempt)))
+                            (try
+                              (let [response (fetch-fn url (* bs first-block) (dec (* bs (inc last-block))))]
+                                (count! cache :misses 1)
+                                (when-let [^bytes body (:body response)]
+                                  (count! cache :bytes-from-network (alength body)))
+                                (when (= 206 (:status response))
+                                  (try
+                                    (store-response! cache url response)
+                                    (catch Exception _)))
+                                (slice-response response offset end))
+                              (finally
+                                (land-flights! cache claimed)))))))]
+     (when (#{200 206} (:status response))
+       (try
+         (read-ahead! cache url first-block last-block prefetch-fn)
+         (catch Exception _)))
+     response)))
+
+(defn stats
+  "Counters since the cache was made: :memory-hits and :disk-hits (blocks),
+   :misses (requests sent to the network), :bytes-from-cache,
+   :bytes-from-network, :stores, :evictions (disk), :coalesced (misses
+   answered by another thread's fetch), :prefetches, :prefetched-bytes,
+   :prefetches-declined; plus current :memory-bytes, :disk-bytes,
+   :disk-blocks and :in-flight blocks."
+  [cache]
+  (let [^LinkedHashMap memory (:memory cache)
+        ^LinkedHashMap disk (:disk cache)]
+    (merge (into {} (map (fn [[k ^LongAdder a]] [k (.sum a)])) (:counters cache))
+           {:memory-bytes (locking memory (aget ^longs (:memory-bytes cache) 0))
+            :disk-bytes (locking disk (aget ^longs (:disk-bytes cache) 0))
+            :disk-blocks (locking disk (.size disk))
+            :in-flight (.size ^ConcurrentHashMap (:flights cache))})))
@@ -23,6 +23,7 @@ try {
 try {
   copyFileSync('proj-worker.mjs', 'dist/proj-worker.mjs');
   copyFileSync('fetch-worker.mjs', 'dist/fetch-worker.mjs');
+  copyFileSync('grid-cache.mjs', 'dist/grid-cache.mjs');
 } catch (err) {
   console.warn('Warning: Could not copy worker files:', err.message);
 }
@@ -1,10 +1,14 @@
 /**
- * fetch-worker.mjs - Node.js worker_thread that bridges synchronous HTTP requests
- * from the PROJ worker to Node.js's async HTTP APIs.
+ * fetch-worker.mjs - Worker that bridges synchronous HTTP requests from the PROJ
+ * worker to async HTTP APIs, with an optional persistent grid chunk cache.
  *
  * Why this exists: Emscripten's FETCH uses synchronous XMLHttpRequest, but Node.js
  * doesn't have sync HTTP. The PROJ worker's XMLHttpRequest polyfill (in proj-worker.mjs)
- * delegates sync requests here via SharedArrayBuffer + Atomics.
+ * delegates sync requests here via SharedArrayBuffer + Atomics. Browsers do have
+ * sync XHR, but a sync request cannot consult IndexedDB, so when the grid cache
+ * is enabled (and SharedArrayBuffer is available) the PROJ worker routes its sync
+ * requests here too, as a module Web Worker using fetch(). Requests then go
+ * through grid-cache.mjs, which answers repeated grid ranges locally.
  *
  * Communication protocol using three SharedArrayBuffers:
  *   controlBuffer (8B, Int32Array)  - [0]=request ready (1=waiting), [1]=response ready (1=done)
@@ -17,9 +21,26 @@
  * in control[0]).
  */
 
-import { parentPort } from 'worker_threads';
-import https from 'https';
-import http from 'http';
+import { openGridCache } from './grid-cache.mjs';
+
+const isNode = typeof process !== 'undefined' && process.versions?.node;
+
+let parentPort;
+let http;
+let https;
+if (isNode) {
+  ({ parentPort } = await import('worker_threads'));
+  http = (await import('http')).default;
+  https = (await import('https')).default;
+} else {
+  parentPort = {
+    on: (_event, handler) => { self.onmessage = (e) => handler(e.data); },
+    postMessage: (msg) => self.postMessage(msg)
+  };
+}
+
+// Grid chunk cache (null when disabled); see the 'cache' command
+let gridCache = null;
 
 // Shared buffers for communication
 let controlBuffer = null;  // Int32Array for signaling
@@ -56,6 +77,18 @@ parentPort.on('message', async (msg) => {
       Atomics.notify(controlBuffer, 0, 1);
     }
     parentPort.postMessage({ status: 'shutdown_complete' });
+  } else if (msg.cmd === 'cache') {
+    // Enable the grid chunk cache. Sync requests arriving before it is open
+    // go straight to the network.
+    try {
+      gridCache = msg.options ? await openGridCache(msg.options) : null;
+      parentPort.postMessage({ status: 'cache_ready' });
+    } catch (err) {
+      gridCache = null;
+      parentPort.postMessage({ status: 'cache_failed', error: err.message });
+    }
+  } else if (msg.cmd === 'cache_stats') {
+    parentPort.postMessage({ status: 'cache_stats', stats: gridCache ? gridCache.getStats() : null });
   }
 });
 
@@ -73,8 +106,11 @@ async function pollForRequests() {
     if (result === 'ok' || signal === 1) {
       // Request is ready - read request data from dataBuffer
       await handleRequest();
+    } else {
+      // 'timed-out' means no request yet: let queued messages ('cache',
+      // 'cache_stats') run, then keep polling
+      await new Promise(r => setTimeout(r, 0));
     }
-    // 'timed-out' means no request yet, keep polling
   }
 }
 
@@ -96,8 +132,10 @@ async function handleRequest() {
       headers = JSON.parse(headersStr);
     }
 
-    // Make the HTTP request
-    const response = await doFetch(url, headers);
+    // Make the HTTP request, or answer it from the grid cache
+    const response = gridCache
+      ? await gridCache.fetch(url, headers, doFetch)
+      : await doFetch(url, headers);
 
     // Write response to buffers
     writeResponse(response);
@@ -109,9 +147,11 @@ async function handleRequest() {
 }
 
 // Resolves https vs http module based on URL protocol, uses Node.js http(s).request
-// with a 30-second timeout. Errors and timeouts resolve as {status: 0} rather than
-// rejecting, so the calling worker gets an error status instead of an unhandled rejection.
+// (fetch() in browsers) with a 30-second timeout. Errors and timeouts resolve as
+// {status: 0} rather than rejecting, so the calling worker gets an error status
+// instead of an unhandled rejection.
 function doFetch(url, headers) {
+  if (!isNode) return browserFetch(url, headers);
   return new Promise((resolve, reject) => {
     const parsedUrl = new URL(url);
     const isHttps = parsedUrl.protocol === 'https:';
@@ -154,6 +194,23 @@ function doFetch(url, headers) {
   });
 }
 
+async function browserFetch(url, headers) {
+  const controller = new AbortController();
+  const timer = setTimeout(() => controller.abort(), 30000);
+  try {
+    const res = await fetch(url, { headers, signal: controller.signal });
+    const body = new Uint8Array(await res.arrayBuffer());
+    const headersStr = [...res.headers.entries()]
+      .map(([k, v]) => `${k}: ${v}`)
+      .join('\r\n');
+    return { status: res.status, body, headers: headersStr };
+  } catch (err) {
+    return { status: 0, body: new Uint8Array(0), headers: '', error: err.name === 'AbortError' ? 'timeout' : err.message };
+  } finally {
+    clearTimeout(timer);
+  }
+}
+
 // Writes response to shared buffers. Layout: body bytes at dataBuffer offset 0,
 // then header bytes immediately after body. Meta buffer stores [status, bodyLength,
 // headersLength]. Order matters: data must be fully written before setting control[1]=1
@@ -0,0 +1,459 @@
+/**
+ * grid-cache.mjs - Persistent cache of grid byte ranges for the fetch-worker.
+ *
+ * PROJ reads network grids (GeoTIFF on cdn.proj.org) as HTTP range requests,
+ * and the WASM build keeps its own chunk cache in Emscripten's in-memory
+ * filesystem, so every process start or page load downloads the same ranges
+ * again. This cache sits in front of the network in fetch-worker.mjs:
+ *
+ *   - Ranges are split into fixed-size chunks aligned to the file start
+ *     (16 KiB by default, PROJ's own chunk size). A chunk is keyed by URL,
+ *     the file's validator (ETag, else Last-Modified) and chunk index.
+ *   - Per URL the cache remembers the current validator, the file size and
+ *     when they were last confirmed. While that is younger than ttlSeconds, a
+ *     request whose chunks are all cached is answered without any network
+ *     request, with the 206 status and Content-Range header PROJ expects.
+ *   - Otherwise the request goes to the network as-is; a 206 reply is split
+ *     into chunks and stored, and a changed validator retires the URL's old
+ *     chunks.
+ *   - Total chunk bytes are bounded by maxBytes, evicting least recently used
+ *     chunks first.
+ *
+ * Storage is pluggable: a directory of files on Node.js (shared by all
+ * workers and processes using it), IndexedDB in browsers, or memory. A shared
+ * store is re-listed once an instance has stored a sixteenth of maxBytes since
+ * its last listing, or after a minute, so the bound holds for the directory as
+ * a whole rather than per GridCache instance, give or take what the other
+ * instances stored since. A miss does not pay for a listing of every chunk.
+ */
+
+const DEFAULT_CHUNK_SIZE = 16384;
+const DEFAULT_MAX_BYTES = 256 * 1024 * 1024;
+const DEFAULT_TTL_SECONDS = 86400;
+// A shared store is re-listed after this fraction of maxBytes is stored, or
+// this long after the last listing
+const RELIST_FRACTION = 1 / 16;
+const RELIST_INTERVAL_MS = 60000;
+
+// 64-bit FNV-1a as hex, for file names. Chunk files also store their full key,
+// so a collision is a miss rather than wrong data.
+function hashKey(str) {
+  let h1 = 0x811c9dc5, h2 = 0xcbf29ce4;
+  for (let i = 0; i < str.length; i++) {
+    const c = str.charCodeAt(i);
+    h1 = Math.imul(h1 ^ c, 0x01000193) >>> 0;
+    h2 = Math.imul(h2 ^ (c + i), 0x01000193) >>> 0;
+  }
+  return h1.toString(16).padStart(8, '0') + h2.toString(16).padStart(8, '0');
+}
+
+function parseHeaders(headers) {
+  const out = {};
+  for (const line of (headers || '').split('\r\n')) {
+    const idx = line.indexOf(':');
+    if (idx > 0) out[line.slice(0, idx).trim().toLowerCase()] = line.slice(idx + 1).trim();
+  }
+  return out;
+}
+
+function headerValue(headers, name) {
+  for (const [k, v] of Object.entries(headers || {})) {
+    if (k.toLowerCase() === name) return v;
+  }
+  return null;
+}
+
+// "bytes=a-b" -> [a, b]; open or multi-part ranges are not cached
+function parseRange(value) {
+  const m = /^bytes=(\d+)-(\d+)$/.exec((value || '').trim());
+  return m ? [Number(m[1]), Number(m[2])] : null;
+}
+
+// "bytes a-b/total" -> [a, b, total]
+function parseContentRange(value) {
+  const m = /^bytes (\d+)-(\d+)\/(\d+)$/.exec((value || '').trim());
+  return m ? [Number(m[1]), Number(m[2]), Number(m[3])] : null;
+}
+
+/**
+ * Chunk and metadata storage in a directory (Node.js). Chunks are
+ * <hash>.chunk files holding [keyLength:4][key][bytes]; metadata is
+ * <hash>.meta JSON. File mtimes record last use, so the LRU order survives
+ * restarts and is shared between workers and processes.
+ */
+async function directoryStore(dir) {
+  const fs = await import('fs/promises');
+  const { join } = await import('path');
+  await fs.mkdir(dir, { recursive: true });
+  const enc = new TextEncoder();
+  const dec = new TextDecoder();
+  const chunkPath = (key) => join(dir, hashKey(key) + '.chunk');
+  const metaPath = (url) => join(dir, hashKey(url) + '.meta');
+
+  // Write to a temporary name and rename, so readers never see partial files
+  async function writeAtomic(path, data) {
+    const tmp = `${path}.${process.pid}.${Math.random().toString(36).slice(2)}.tmp`;
+    await fs.writeFile(tmp, data);
+    await fs.rename(tmp, path);
+  }
+
+  return {
+    shared: true,
+    async list() {
+      const names = (await fs.readdir(dir)).filter((name) => name.endsWith('.chunk'));
+      const entries = await Promise.all(names.map(async (name) => {
+        try {
+          const st = await fs.stat(join(dir, name));
+          return { id: name, size: st.size, lastUsed: st.mtimeMs };
+        } catch {
+          return null;  // Removed by another worker or process
+        }
+      }));
+      return entries.filter(Boolean);
+    },
+    async get(key) {
+      const path = chunkPath(key);
+      let buf;
+      try {
+        buf = await fs.readFile(path);
+      } catch {
+        return null;
+      }
+      const keyLength = buf.readInt32LE(0);
+      if (dec.decode(buf.subarray(4, 4 + keyLength)) !== key) return null;
+      const now = new Date();
+      await fs.utimes(path, now, now).catch(() => {});
+      return new Uint8Array(buf.buffer, buf.byteOffset + 4 + keyLength, buf.byteLength - 4 - keyLength);
+    },
+    async put(key, bytes) {
+      const keyBytes = enc.encode(key);
+      const data = new Uint8Array(4 + keyBytes.length + bytes.length);
+      new DataView(data.buffer).setInt32(0, keyBytes.length, true);
+      data.set(keyBytes, 4);
+      data.set(bytes, 4 + keyBytes.length);
+      await writeAtomic(chunkPath(key), data);
+      return { id: hashKey(key) + '.chunk', size: data.length };
+    },
+    async remove(id) {
+      await fs.rm(join(dir, id), { force: true });
+    },
+    idOf(key) {
+      return hashKey(key) + '.chunk';
+    },
+    async getMeta(url) {
+      try {
+        return JSON.parse(await fs.readFile(metaPath(url), 'utf8'));
+      } catch {
+        return null;
+      }
+    },
+    async putMeta(url, meta) {
+      await writeAtomic(metaPath(url), JSON.stringify(meta));
+    }
+  };
+}
+
+/**
+ * Chunk and metadata storage in IndexedDB (browsers): object stores
+ * 'chunks' {id, bytes, size, lastUsed} and 'meta' {url, ...}.
+ */
+async function indexedDbStore(name) {
+  const db = await new Promise((resolve, reject) => {
+    const req = indexedDB.open(name, 1);
+    req.onupgradeneeded = () => {
+      req.result.createObjectStore('chunks', { keyPath: 'id' });
+      req.result.createObjectStore('meta', { keyPath: 'url' });
+    };
+    req.onsuccess = () => resolve(req.result);
+    req.onerror = () => reject(req.error);
+  });
+  const run = (storeName, mode, f) => new Promise((resolve, reject) => {
+    const tx = db.transaction(storeName, mode);
+    const req = f(tx.objectStore(storeName));
+    tx.oncomplete = () => resolve(req ? req.result : undefined);
+    tx.onerror = () => reject(tx.error);
+  });
+
+  return {
+    async list() {
+      const all = await run('chunks', 'readonly', (s) => s.getAll());
+      return all.map(({ id, size, lastUsed }) => ({ id, size, lastUsed }));
+    },
+    async get(key) {
+      const entry = await run('chunks', 'readonly', (s) => s.get(key));
+      if (!entry) return null;
+      entry.lastUsed = Date.now();
+      run('chunks', 'readwrite', (s) => s.put(entry)).catch(() => {});
+      return new Uint8Array(entry.bytes);
+    },
+    async put(key, bytes) {
+      await run('chunks', 'readwrite', (s) => s.put({ id: key, bytes: bytes.slice().buffer, size: bytes.length, lastUsed: Date.now() }));
+      return { id: key, size: bytes.length };
+    },
+    async remove(id) {
+      await run('chunks', 'readwrite', (s) => s.delete(id));
+    },
+    idOf(key) {
+      return key;
+    },
+    async getMeta(url) {
+      return (await run('meta', 'readonly', (s) => s.get(url))) || null;
+    },
+    async putMeta(url, meta) {
+      await run('meta', 'readwrite', (s) => s.put({ ...meta, url }));
+    }
+  };
+}
+
+/**
+ * Non-persistent storage, for tests and when no persistent store is
+ * available.
+ */
+function memoryStore() {
+  const chunks = new Map();
+  const meta = new Map();
+  return {
+    async list() {
+      return [...chunks.entries()].map(([id, e]) => ({ id, size: e.bytes.length, lastUsed: e.lastUsed }));
+    },
+    async get(key) {
+      const e = chunks.get(key);
+      if (!e) return null;
+      e.lastUsed = Date.now();
+      return e.bytes;
+    },
+    async put(key, bytes) {
+      chunks.set(key, { bytes: bytes.slice(), lastUsed: Date.now() });
+      return { id: key, size: bytes.length };
+    },
+    async remove(id) {
+      chunks.delete(id);
+    },
+    idOf(key) {
+      return key;
+    },
+    async getMeta(url) {
+      return meta.get(url) || null;
+    },
+    async putMeta(url, m) {
+      meta.set(url, { ...m });
+    }
+  };
+}
+
+class GridCache {
+  constructor(store, options = {}) {
+    this.store = store;
+    this.chunkSize = options.chunkSize || DEFAULT_CHUNK_SIZE;
+    this.maxBytes = options.maxBytes ?? DEFAULT_MAX_BYTES;
+    this.ttlMs = (options.ttlSeconds ?? DEFAULT_TTL_SECONDS) * 1000;
+    // id -> size, in least- to most-recently-used order (Map keeps insertion order)
+    this.lru = new Map();
+    this.bytes = 0;
+    // Bytes stored since the last listing of a shared store, and when that was
+    this.storedSinceList = 0;
+    this.listedAt = 0;
+    this.metas = new Map();
+    this.stats = { hits: 0, misses: 0, stores: 0, evictions: 0, bytesServed: 0 };
+  }
+
+  async load() {
+    // evict() lists shared stores itself
+    if (!this.store.shared) await this.resync();
+    await this.evict();
+    return this;
+  }
+
+  touch(id, size) {
+    if (this.lru.has(id)) {
+      this.bytes -= this.lru.get(id);
+      this.lru.delete(id);
+    }
+    this.lru.set(id, size);
+    this.bytes += size;
+  }
+
+  // Rebuild the LRU from the store's listing, which includes chunks written
+  // or removed by other instances. Entries this instance has used keep their
+  // relative order when file times tie.
+  async resync() {
+    const rank = new Map();
+    let i = 0;
+    for (const id of this.lru.keys()) rank.set(id, i++);
+    const entries = await this.store.list();
+    entries.sort((a, b) => (a.lastUsed - b.lastUsed) || ((rank.get(a.id) ?? -1) - (rank.get(b.id) ?? -1)));
+    this.lru = new Map();
+    this.bytes = 0;
+    this.storedSinceList = 0;
+    this.listedAt = Date.now();
+    for (const { id, size } of entries) {
+      this.lru.set(id, size);
+      this.bytes += size;
+    }
+  }
+
+  async evict() {
+    if (this.store.shared
+        && (this.storedSinceList >= this.maxBytes * RELIST_FRACTION
+            || Date.now() - this.listedAt >= RELIST_INTERVAL_MS)) {
+      await this.resync();
+    }
+    while (this.bytes > this.maxBytes && this.lru.size > 0) {
+      const [id, size] = this.lru.entries().next().value;
+      this.lru.delete(id);
+      this.bytes -= size;
+      this.stats.evictions++;
+      await this.store.remove(id).catch(() => {});
+    }
+  }
+
+  async meta(url) {
+    if (!this.metas.has(url)) this.metas.set(url, await this.store.getMeta(url));
+    return this.metas.get(url);
+  }
+
+  chunkKey(url, validator, index) {
+    return `${url}\n${validator}\n${index}`;
+  }
+
+  /**
+   * Answer a GET from the cache, or null when any chunk is missing or the
+   * URL's validator is due for confirmation.
+   */
+  async lookup(url, range) {
+    const meta = await this.meta(url);
+    if (!meta || Date.now() - meta.checkedAt > this.ttlMs) return null;
+    const [start, requestedEnd] = range;
+    if (start >= meta.size) return null;
+    const end = Math.min(requestedEnd, meta.size - 1);
+    const first = Math.floor(start / this.chunkSize);
+    const last = Math.floor(end / this.chunkSize);
+    const body = new Uint8Array(end - start + 1);
+    for (let i = first; i <= last; i++) {
+      const key = this.chunkKey(url, meta.validator, i);
+      const chunk = await this.store.get(key);
+      const chunkStart = i * this.chunkSize;
+      const expected = Math.min(this.chunkSize, meta.size - chunkStart);
+      if (!chunk || chunk.length !== expected) return null;
+      const id = this.store.idOf(key);
+      this.touch(id, this.lru.get(id) ?? chunk.length);
+      const from = Math.max(start, chunkStart);
+      const to = Math.min(end, chunkStart + chunk.length - 1);
+      body.set(chunk.subarray(from - chunkStart, to - chunkStart + 1), from - start);
+    }
+    const headers = [
+      `content-range: bytes ${start}-${end}/${meta.size}`,
+      `content-length: ${body.length}`,
+      'content-type: application/octet-stream',
+      'accept-ranges: bytes'
+    ];
+    if (meta.etag) headers.push(`etag: ${meta.etag}`);
+    if (meta.lastModified) headers.push(`last-modified: ${meta.lastModified}`);
+    return { status: 206, body, headers: headers.join('\r\n'), cached: true };
+  }
+
+  /**
+   * Record a network reply: confirm or replace the URL's validator and keep
+   * every whole chunk in a 206 body (plus a final partial chunk at EOF).
+   */
+  async record(url, response) {
+    if (response.status !== 206) return;
+    const headers = parseHeaders(response.headers);
+    const cr = parseContentRange(headers['content-range']);
+    const etag = headers['etag'] || null;
+    const lastModified = headers['last-modified'] || null;
+    const validator = etag || lastModified;
+    if (!cr || !validator) return;
+    const [start, end, size] = cr;
+    const body = response.body;
+    if (body.length !== end - start + 1) return;
+
+    const old = await this.meta(url);
+    const meta = { etag, lastModified, validator, size, checkedAt: Date.now() };
+    this.metas.set(url, meta);
+    await this.store.putMeta(url, meta);
+    if (old && old.validator !== validator) {
+      // Chunks of the previous version can no longer be served
+      const stale = [];
+      for (let i = 0; i * this.chunkSize < old.size; i++) {
+        const id = this.store.idOf(this.chunkKey(url, old.validator, i));
+        if (this.lru.has(id)) stale.push([id, this.lru.get(id)]);
+      }
+      for (const [id, sz] of stale) {
+        this.lru.delete(id);
+        this.bytes -= sz;
+        await this.store.remove(id).catch(() => {});
+      }
+    }
+
+    let i = Math.ceil(start / this.chunkSize);
+    for (; i * this.chunkSize <= end; i++) {
+      const chunkStart = i * this.chunkSize;
+      const chunkEnd = Math.min(chunkStart + this.chunkSize, size) - 1;
+      if (chunkEnd > end) break;
+      const bytes = body.subarray(chunkStart - start, chunkEnd - start + 1);
+      const { id, size: stored } = await this.store.put(this.chunkKey(url, validator, i), bytes);
+      this.touch(id, stored);
+      this.storedSinceList += stored;
+      this.stats.stores++;
+    }
+    await this.evict();
+  }
+
+  /**
+   * GET url with headers through the cache. doFetch(url, headers) returns
+   * {status, body: Uint8Array, headers: string}; the result has the same
+   * shape. Only single-range requests are cached.
+   */
+  async fetch(url, headers, doFetch) {
+    const range = parseRange(headerValue(headers, 'range'));
+    if (range) {
+      try {
+        const hit = await this.lookup(url, range);
+        if (hit) {
+          this.stats.hits++;
+          this.stats.bytesServed += hit.body.length;
+          return hit;
+        }
+      } catch (e) {
+        // A broken cache must not break grid access
+      }
+      this.stats.misses++;
+    }
+    const response = await doFetch(url, headers);
+    if (range) {
+      try {
+        await this.record(url, response);
+      } catch (e) {
+        // Ignore storage failures (quota, permissions); the reply is still good
+      }
+    }
+    return response;
+  }
+
+  getStats() {
+    return { ...this.stats, bytes: this.bytes, chunks: this.lru.size, maxBytes: this.maxBytes };
+  }
+}
+
+/**
+ * Open a cache from fetch-worker options: {directory} (Node.js),
+ * {indexedDb: name} (browsers, default 'proj-grid-cache'), or {memory: true};
+ * plus maxBytes, ttlSeconds and chunkSize.
+ */
+async function openGridCache(options = {}) {
+  let store;
+  if (options.memory) {
+    store = memoryStore();
+  } else if (options.directory) {
+    store = await directoryStore(options.directory);
+  } else if (typeof indexedDB !== 'undefined') {
+    store = await indexedDbStore(options.indexedDb || 'proj-grid-cache');
+  } else {
+    store = memoryStore();
+  }
+  return new GridCache(store, options).load();
+}
+
+export { GridCache, openGridCache, directoryStore, indexedDbStore, memoryStore,
+         parseRange, parseContentRange };
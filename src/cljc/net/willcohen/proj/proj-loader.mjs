@@ -11,6 +11,10 @@
  * For workers, message passing uses a promise-per-call pattern: each outgoing message
  * gets a unique callIdCounter, and the promise resolver is stored in a pendingCalls Map.
  *
+ * Coordinate data crosses to workers without element-wise conversion: buffers
+ * backed by a SharedArrayBuffer are read and written by the worker in place,
+ * others are transferred (moved) there and back. See packCoordArray.
+ *
  * @module proj-loader
  */
 
@@ -287,21 +291,290 @@ function sendToWorker(worker, message, transfer = []) {
   });
 }
 
+function settleReply(pending, reply) {
+  const { result, error, stack, coordData } = reply;
+  if (error) {
+    const err = new Error(error);
+    err.stack = stack;
+    // Transferred coordinate buffers come back even when the call failed
+    if (coordData) err.coordData = coordData;
+    pending.reject(err);
+  } else {
+    pending.resolve(result);
+  }
+}
+
 function handleWorkerMessage(data) {
-  const { id, result, error, stack } = data;
+  const { id } = data;
   const pending = pendingCalls.get(id);
   if (pending) {
     pendingCalls.delete(id);
-    if (error) {
-      const err = new Error(error);
-      err.stack = stack;
-      pending.reject(err);
+    if (pending.calls) {
+      // Reply to a coalesced batch: one entry per call, in order
+      pending.calls.forEach((call, i) => settleReply(call, data.results[i]));
+    } else {
+      settleReply(pending, data);
+    }
+  }
+}
+
+// --- Call coalescing ---
+// The first call to a worker in a tick is sent at once and opens that
+// worker's outbox until the end of the tick. Later calls in the same tick wait
+// there and go out together as one 'batch' message when the tick ends; the
+// worker runs them in order and answers with one reply. A lone queued call is
+// sent as an ordinary message. Inside batch() every call is queued.
+
+const batching = {
+  auto: true,       // coalesce every call, not only those inside batch()
+  maxCalls: 256,    // an outbox this full is sent at once
+  depth: 0          // open batch() scopes
+};
+
+/**
+ * Run f after the current task and every microtask it queued, so calls
+ * issued through chains of resolved promises in this tick are all queued.
+ */
+const afterTick = typeof setImmediate === 'function'
+  ? (f) => setImmediate(f)
+  : (() => {
+      const channel = new MessageChannel();
+      const queue = [];
+      channel.port1.onmessage = () => queue.shift()();
+      return (f) => { queue.push(f); channel.port2.postMessage(null); };
+    })();
+
+function flushOutbox(pool, workerIdx) {
+  const outbox = pool.outboxes[workerIdx];
+  if (!outbox) return;
+  pool.outboxes[workerIdx] = null;
+  const worker = pool.workers[workerIdx];
+  const { calls } = outbox;
+  if (calls.length === 0) return;
+  if (calls.length === 1) {
+    const [call] = calls;
+    sendToWorker(worker, call.message, call.transfer).then(call.resolve, call.reject);
+    return;
+  }
+  const id = ++callIdCounter;
+  const transfer = [...new Set(calls.flatMap((call) => call.transfer))];
+  pendingCalls.set(id, { calls });
+  pool.batchesSent++;
+  pool.callsBatched += calls.length;
+  worker.postMessage({ cmd: 'batch', id, calls: calls.map((call) => call.message) }, transfer);
+}
+
+function flushAll(pool) {
+  pool.flushScheduled = false;
+  for (let i = 0; i < pool.outboxes.length; i++) flushOutbox(pool, i);
+}
+
+function scheduleFlush(pool) {
+  if (!pool.flushScheduled) {
+    pool.flushScheduled = true;
+    afterTick(() => flushAll(pool));
+  }
+}
+
+/**
+ * Send a call now, or queue it for workerIdx's next batch: calls are queued
+ * inside a batch() scope, and with automatic coalescing while a call to the
+ * same worker already went out earlier in this tick.
+ */
+function enqueueCall(pool, workerIdx, message, transfer) {
+  if (batching.depth === 0 && (!batching.auto || !pool.outboxes[workerIdx])) {
+    if (batching.auto) {
+      // Open the outbox so the rest of this tick's calls are coalesced
+      pool.outboxes[workerIdx] = { calls: [] };
+      scheduleFlush(pool);
+    }
+    return sendToWorker(pool.workers[workerIdx], message, transfer);
+  }
+  return new Promise((resolve, reject) => {
+    const outbox = pool.outboxes[workerIdx] || (pool.outboxes[workerIdx] = { calls: [] });
+    outbox.calls.push({ message, transfer, resolve, reject });
+    if (outbox.calls.length >= batching.maxCalls) {
+      flushOutbox(pool, workerIdx);
     } else {
-      pending.resolve(result);
+      scheduleFlush(pool);
+    }
+  });
+}
+
+/**
+ * Group the worker calls f issues into as few messages as possible, even when
+ * automatic coalescing is off. Calls made while f runs, and in the promise
+ * chains it starts before the end of the current tick, share one message per
+ * worker. Calls issued after f awaits a PROJ result are not held back (that
+ * would wait forever) and go out as usual. Resolves to f's result; an array
+ * of promises is awaited with Promise.all.
+ */
+async function batch(f) {
+  batching.depth++;
+  let released = false;
+  const release = () => {
+    if (!released) {
+      released = true;
+      afterTick(() => { batching.depth--; });
     }
+  };
+  try {
+    const value = f();
+    release();
+    return Array.isArray(value) ? await Promise.all(value) : await value;
+  } finally {
+    release();
   }
 }
 
+/**
+ * Change call coalescing; keys not given are kept.
+ * @param {object} options
+ * @param {boolean} [options.auto] - coalesce all same-tick calls (default true)
+ * @param {number} [options.maxCalls] - largest batch before sending early (default 256)
+ * @returns {object} the current settings
+ */
+function configureBatching(options = {}) {
+  if (options.auto !== undefined) batching.auto = !!options.auto;
+  if (options.maxCalls !== undefined) batching.maxCalls = Math.max(1, options.maxCalls);
+  return { auto: batching.auto, maxCalls: batching.maxCalls };
+}
+
+/**
+ * Per-worker load counters kept by the pool. inFlight and queuedPoints
+ * (coordinates in pending ccalls) describe current load; the rest accumulate.
+ */
+function createWorkerStats() {
+  return {
+    inFlight: 0,
+    queuedPoints: 0,
+    completed: 0,
+    failed: 0,
+    totalLatencyMs: 0,
+    maxLatencyMs: 0,
+    contexts: 0
+  };
+}
+
+function pointsInMessage(msg) {
+  let points = 0;
+  if (msg.coordArrays) {
+    for (const ca of msg.coordArrays) points += ca.numFloats / 4;
+  }
+  return points;
+}
+
+/**
+ * Send a call through the worker's outbox, with load accounting for the
+ * pool's scheduler.
+ */
+function trackedSend(pool, workerIdx, msg, transfer) {
+  const stats = pool.stats[workerIdx];
+  const points = pointsInMessage(msg);
+  const start = performance.now();
+  stats.inFlight++;
+  stats.queuedPoints += points;
+  const settle = (ok) => {
+    const ms = performance.now() - start;
+    stats.inFlight--;
+    stats.queuedPoints -= points;
+    stats.completed++;
+    if (!ok) stats.failed++;
+    stats.totalLatencyMs += ms;
+    if (ms > stats.maxLatencyMs) stats.maxLatencyMs = ms;
+  };
+  const destroysContext = msg.cmd === 'ccall' && msg.fn === 'proj_context_destroy';
+  return enqueueCall(pool, workerIdx, msg, transfer).then(
+    (result) => {
+      settle(true);
+      if (destroysContext) releaseContext(pool, workerIdx);
+      return result;
+    },
+    (error) => { settle(false); throw error; });
+}
+
+/**
+ * Uncount a context on workerIdx, once it is destroyed or its creation failed.
+ */
+function releaseContext(pool, workerIdx) {
+  const stats = pool.stats[workerIdx];
+  if (stats.contexts > 0) stats.contexts--;
+}
+
+/**
+ * Index of the least-loaded worker: fewest queued points, then fewest calls
+ * in flight, then fewest contexts assigned (so idle pools still spread
+ * contexts evenly).
+ */
+function leastLoadedWorker(pool) {
+  let best = 0;
+  for (let i = 1; i < pool.stats.length; i++) {
+    const a = pool.stats[i];
+    const b = pool.stats[best];
+    if (a.queuedPoints !== b.queuedPoints ? a.queuedPoints < b.queuedPoints
+        : a.inFlight !== b.inFlight ? a.inFlight < b.inFlight
+        : a.contexts < b.contexts) {
+      best = i;
+    }
+  }
+  return best;
+}
+
+/**
+ * Snapshot of every worker's load counters, with meanLatencyMs added.
+ */
+function workerStats(pool) {
+  return pool.stats.map((s, worker) => ({
+    worker,
+    ...s,
+    meanLatencyMs: s.completed > 0 ? s.totalLatencyMs / s.completed : 0
+  }));
+}
+
+/**
+ * Whether coordinate buffers can be backed by a SharedArrayBuffer: it must exist
+ * and, in browsers, the page must be cross-origin isolated to post it to a worker.
+ * @returns {boolean}
+ */
+function canShareBuffers() {
+  if (typeof SharedArrayBuffer === 'undefined') return false;
+  if (detectEnvironment() === 'node') return true;
+  return typeof crossOriginIsolated !== 'undefined' && crossOriginIsolated;
+}
+
+/**
+ * Allocates the Float64Array behind a coord array, on a SharedArrayBuffer when
+ * canShareBuffers() so workers can transform it in place.
+ * @param {number} nFloats - Number of doubles (4 per coordinate)
+ * @returns {Float64Array}
+ */
+function allocCoordBuffer(nFloats) {
+  return canShareBuffers()
+    ? new Float64Array(new SharedArrayBuffer(nFloats * 8))
+    : new Float64Array(nFloats);
+}
+
+/**
+ * Prepares a coord array's Float64Array for a worker call without copying
+ * element by element:
+ * - shared: a SharedArrayBuffer view, posted as is; the worker writes results
+ *   straight into it.
+ * - moved: a view covering its whole ArrayBuffer, which is transferred to the
+ *   worker and back. The view is unusable (detached) until the call settles;
+ *   the caller must adopt the returned array.
+ * - otherwise (a view into part of a larger buffer): one typed copy, transferred.
+ * @param {Float64Array} view
+ * @returns {{data: Float64Array, shared: boolean, moved: boolean, transfer: ArrayBuffer|null}}
+ */
+function packCoordArray(view) {
+  if (typeof SharedArrayBuffer !== 'undefined' && view.buffer instanceof SharedArrayBuffer) {
+    return { data: view, shared: true, moved: false, transfer: null };
+  }
+  const whole = view.byteOffset === 0 && view.byteLength === view.buffer.byteLength;
+  const data = whole ? view : view.slice();
+  return { data, shared: false, moved: whole, transfer: data.buffer };
+}
+
 /**
  * Loads proj.db and proj.ini from filesystem (Node.js) or fetch (browser).
  * Used by initWithWorkers to load resources once before distributing to workers.
@@ -346,11 +619,18 @@ async function loadProjResources() {
  * Emscripten module and memory. Loads proj.db and proj.ini once, then sends to
  * all workers on init.
  *
- * Returns a pool object with sendToWorker(workerIdx, msg) for message routing.
+ * Returns a pool object with sendToWorker(workerIdx, msg, transfer) for message
+ * routing, which also keeps per-worker load counters: leastLoadedWorker(),
+ * assignContext(idx), releaseContext(idx) and getStats() / resetStats()
+ * expose them. Calls to one
+ * worker in the same tick are coalesced into one message (see batch()).
  * Default is 1 worker. Use 'auto' to match hardware concurrency.
  *
  * @param {object} [options]
  * @param {number|'auto'} [options.workers=1] - Number of workers to spawn
+ * @param {boolean|object} [options.gridCache=false] - Cache fetched grid chunks
+ *   persistently: true for defaults (IndexedDB in browsers, a directory under
+ *   the OS temp dir on Node.js) or {directory, maxBytes, ttlSeconds, chunkSize}
  * @returns {Promise<object>} Worker pool object
  */
 async function initWithWorkers(options = {}) {
@@ -384,6 +664,10 @@ async function initWithWorkers(options = {}) {
     console.info('proj-wasm: SharedArrayBuffer not available. Pthreads WASM build may not load. Enable COOP/COEP headers for full support.');
   }
 
+  // Persistent grid chunk cache (see grid-cache.mjs): true, or
+  // {directory, maxBytes, ttlSeconds, chunkSize, indexedDb}
+  const gridCache = options.gridCache ?? options['grid-cache'] ?? false;
+
   // Load resources once
   console.log('proj-wasm: Loading PROJ resources...');
   const { projDb, projIni } = await loadProjResources();
@@ -452,19 +736,41 @@ async function initWithWorkers(options = {}) {
     const initResult = await sendToWorker(worker, {
       cmd: 'init',
       projDb,
-      projIni
+      projIni,
+      gridCache
     });
 
     console.log(`proj-wasm: Worker ${i} initialized:`, initResult);
     workers.push(worker);
   }
 
-  workerPool = {
+  const pool = {
     workers,
     mode,
-    nextWorkerIdx: 0,
-    sendToWorker: (workerIdx, msg) => sendToWorker(workers[workerIdx], msg)
+    stats: workers.map(createWorkerStats),
+    outboxes: workers.map(() => null),
+    flushScheduled: false,
+    batchesSent: 0,
+    callsBatched: 0,
+    sendToWorker: (workerIdx, msg, transfer = []) => trackedSend(pool, workerIdx, msg, transfer),
+    leastLoadedWorker: () => leastLoadedWorker(pool),
+    assignContext: (workerIdx) => { pool.stats[workerIdx].contexts++; return workerIdx; },
+    releaseContext: (workerIdx) => releaseContext(pool, workerIdx),
+    getStats: () => workerStats(pool),
+    getBatchStats: () => ({ batchesSent: pool.batchesSent, callsBatched: pool.callsBatched }),
+    resetStats: () => {
+      // In place: pending calls settle against these same objects
+      for (const s of pool.stats) {
+        s.completed = 0;
+        s.failed = 0;
+        s.totalLatencyMs = 0;
+        s.maxLatencyMs = 0;
+      }
+      pool.batchesSent = 0;
+      pool.callsBatched = 0;
+    }
   };
+  workerPool = pool;
 
   return workerPool;
 }
@@ -473,6 +779,17 @@ function getWorkerPool() {
   return workerPool;
 }
 
+/**
+ * Grid cache counters from each worker's fetch-worker (hits, misses, stores,
+ * evictions, bytesServed, bytes, chunks, maxBytes), or null for workers
+ * without a cache.
+ */
+async function gridCacheStats() {
+  if (!workerPool) return [];
+  return Promise.all(workerPool.workers.map(worker =>
+    sendToWorker(worker, { cmd: 'grid_cache_stats' })));
+}
+
 /**
  * Sends shutdown command to all workers (which cleans up fetch-workers in Node.js),
  * then terminates them.
@@ -481,6 +798,7 @@ async function shutdown() {
   if (!workerPool) return;
 
   const env = detectEnvironment();
+  flushAll(workerPool);
 
   // Send shutdown command to all workers
   for (let i = 0; i < workerPool.workers.length; i++) {
@@ -507,4 +825,6 @@ async function shutdown() {
   workerPool = null;
 }
 
-export { initialize, detectEnvironment, initWithWorkers, getWorkerPool, shutdown };
+export { initialize, detectEnvironment, initWithWorkers, getWorkerPool, shutdown,
+         canShareBuffers, allocCoordBuffer, packCoordArray, batch, configureBatching,
+         gridCacheStats };
@@ -7,18 +7,23 @@
  * On Node.js, sets up an XMLHttpRequest polyfill because Emscripten's FETCH support
  * requires XMLHttpRequest but Node.js doesn't have it natively. The polyfill uses xhr2
  * for async requests and a fetch-worker (via SharedArrayBuffer + Atomics) for sync requests.
+ * When init enables the grid cache, browsers get the same wrapper around their native
+ * XHR, so grid range requests reach the fetch-worker and its cache (grid-cache.mjs).
  *
  * Message protocol from the main thread (proj-loader.mjs):
- *   init            - Load Emscripten module, write proj.db/proj.ini to virtual FS
+ *   init            - Load Emscripten module, write proj.db/proj.ini to virtual FS,
+ *                     optionally open the grid cache (gridCache)
  *   context_create  - Create PROJ context with network + logging configured
  *   ccall           - Generic PROJ function call forwarding (with optional coordArrays
- *                     for inline coord data transfer: temp malloc, copy in, transform,
- *                     copy out, free)
+ *                     for inline coord data: copy into a persistent staging buffer,
+ *                     transform, copy out -- into the caller's SharedArrayBuffer, or
+ *                     into the transferred array, which is transferred back)
  *   malloc / free   - Direct WASM memory management
  *   heapf64_set/get - Float64 heap read/write
  *   read_string_array - Read null-terminated char** from WASM memory
  *   string_to_utf8 / utf8_to_string - String memory operations
- *   shutdown        - Terminate fetch worker (Node.js) and clean up
+ *   grid_cache_stats - Hit/miss/eviction counters of the grid cache
+ *   shutdown        - Terminate fetch worker and clean up
  */
 
 console.debug('PROJ: worker script starting');
@@ -29,6 +34,12 @@ let nextContextId = 1;
 let logCallbackPtr = null;
 let logLevel = 0;  // 0=errors only, 2=debug output
 
+// WASM memory for coordinate arrays passed with ccall, kept between calls and
+// grown on demand instead of a malloc/free per call. Messages are handled one
+// at a time, so one staging area suffices.
+let stagingPtr = 0;
+let stagingBytes = 0;
+
 // PJ_LOG_LEVEL constants from PROJ
 const PJ_LOG_NONE = 0;
 const PJ_LOG_ERROR = 1;
@@ -42,28 +53,12 @@ let onMessage;
 // Detect environment and set up communication
 const isNode = typeof process !== 'undefined' && process.versions?.node;
 
-// XMLHttpRequest polyfill for Node.js.
-// Emscripten's -sFETCH=1 requires XMLHttpRequest for network operations.
-// Uses xhr2 for async requests (open(method, url, true)).
-// For sync requests (open(method, url, false) -- which Emscripten uses for grid fetching),
-// delegates to a fetch-worker via SharedArrayBuffer + Atomics because xhr2 doesn't
-// support synchronous mode.
-if (isNode && typeof globalThis.XMLHttpRequest === 'undefined') {
-  const { Worker } = await import('worker_threads');
-  const { fileURLToPath, pathToFileURL } = await import('url');
-  const { dirname, join } = await import('path');
-  const { createRequire } = await import('module');
-
-  const __filename = fileURLToPath(import.meta.url);
-  const __dirname = dirname(__filename);
-  const require = createRequire(import.meta.url);
-
-  // Use xhr2 for async requests
-  const XHR2 = require('xhr2');
-
-  // Set up fetch worker for sync HTTP requests (xhr2 doesn't support sync)
-  const fetchWorkerPath = pathToFileURL(join(__dirname, 'fetch-worker.mjs'));
-
+// Synchronous HTTP through a fetch-worker (see fetch-worker.mjs): the request
+// is written to shared buffers and this thread blocks in Atomics.wait until the
+// fetch-worker has written the response. worker is the spawned fetch-worker and
+// listen(handler) subscribes to its messages. Returns {worker, syncFetch,
+// waitFor(status)}.
+async function startFetchWorker(worker, listen) {
   const CONTROL_BUFFER_SIZE = 8;
   const META_BUFFER_SIZE = 16;
   const DATA_BUFFER_SIZE = 50 * 1024 * 1024;
@@ -76,26 +71,22 @@ if (isNode && typeof globalThis.XMLHttpRequest === 'undefined') {
   const metaBuffer = new Int32Array(metaSAB);
   const dataBuffer = new Uint8Array(dataSAB);
 
-  let fetchWorkerReady = false;
-  const fetchWorker = new Worker(fetchWorkerPath);
-  fetchWorker.unref();
-  fetchWorker.on('message', (msg) => {
-    if (msg.status === 'ready') {
-      fetchWorkerReady = true;
-    }
+  // Pending waitFor() calls, resolved by the first message with their status
+  const waiters = [];
+  listen((msg) => {
+    const i = waiters.findIndex(w => w.statuses.includes(msg.status));
+    if (i >= 0) waiters.splice(i, 1)[0].resolve(msg);
   });
-  fetchWorker.postMessage({
+  const waitFor = (...statuses) => new Promise(resolve => waiters.push({ statuses, resolve }));
+
+  const ready = waitFor('ready');
+  worker.postMessage({
     cmd: 'init',
     controlBuffer: controlSAB,
     metaBuffer: metaSAB,
     dataBuffer: dataSAB
   });
-
-  globalThis.__projFetchWorker = fetchWorker;
-
-  while (!fetchWorkerReady) {
-    await new Promise(r => setTimeout(r, 1));
-  }
+  await ready;
 
   function syncFetch(url, headers) {
     const urlBytes = new TextEncoder().encode(url);
@@ -126,12 +117,19 @@ if (isNode && typeof globalThis.XMLHttpRequest === 'undefined') {
     return { status, body, headers: responseHeaders };
   }
 
-  // Wrapper that uses xhr2 for async, our sync worker for sync
+  globalThis.__projFetchWorker = worker;
+  globalThis.__projFetchWorkerWaitFor = waitFor;
+  return { worker, syncFetch, waitFor };
+}
+
+// Replace XMLHttpRequest with a wrapper that hands async requests to BaseXHR
+// and sync requests to syncFetch.
+function installXhrWrapper(BaseXHR, syncFetch) {
   let xhrIdCounter = 0;
   globalThis.XMLHttpRequest = class XMLHttpRequest {
     constructor() {
       this._id = ++xhrIdCounter;
-      this._xhr2 = new XHR2();
+      this._xhr2 = new BaseXHR();
       this._async = true;
       this._method = 'GET';
       this._url = null;
@@ -253,17 +251,108 @@ if (isNode && typeof globalThis.XMLHttpRequest === 'undefined') {
   };
 }
 
+// XMLHttpRequest polyfill for Node.js.
+// Emscripten's -sFETCH=1 requires XMLHttpRequest for network operations.
+// Uses xhr2 for async requests (open(method, url, true)).
+// For sync requests (open(method, url, false) -- which Emscripten uses for grid fetching),
+// delegates to a fetch-worker via SharedArrayBuffer + Atomics because xhr2 doesn't
+// support synchronous mode.
+if (isNode && typeof globalThis.XMLHttpRequest === 'undefined') {
+  const { Worker } = await import('worker_threads');
+  const { fileURLToPath, pathToFileURL } = await import('url');
+  const { dirname, join } = await import('path');
+  const { createRequire } = await import('module');
+
+  const __filename = fileURLToPath(import.meta.url);
+  const __dirname = dirname(__filename);
+  const require = createRequire(import.meta.url);
+
+  // Use xhr2 for async requests
+  const XHR2 = require('xhr2');
+
+  // Set up fetch worker for sync HTTP requests (xhr2 doesn't support sync)
+  const fetchWorkerPath = pathToFileURL(join(__dirname, 'fetch-worker.mjs'));
+  const fetchWorker = new Worker(fetchWorkerPath);
+  fetchWorker.unref();
+  const { syncFetch } = await startFetchWorker(fetchWorker, (h) => fetchWorker.on('message', h));
+  installXhrWrapper(XHR2, syncFetch);
+}
+
+// Browsers: the grid cache needs sync requests to go through a fetch-worker
+// too (a sync XHR cannot consult IndexedDB). Requires SharedArrayBuffer, i.e.
+// cross-origin isolation; without it the native XHR is left in place.
+async function enableBrowserFetchWorker() {
+  if (globalThis.__projFetchWorker) return true;
+  const canBlock = typeof SharedArrayBuffer !== 'undefined'
+    && (typeof crossOriginIsolated === 'undefined' || crossOriginIsolated);
+  if (!canBlock) return false;
+  const fetchWorker = new Worker(new URL('./fetch-worker.mjs', import.meta.url), { type: 'module' });
+  const { syncFetch } = await startFetchWorker(
+    fetchWorker, (h) => fetchWorker.addEventListener('message', (e) => h(e.data)));
+  installXhrWrapper(globalThis.XMLHttpRequest, syncFetch);
+  return true;
+}
+
+// Open the persistent grid chunk cache in the fetch-worker. options as for
+// openGridCache in grid-cache.mjs, or true for the defaults: IndexedDB in
+// browsers, <tmpdir>/proj-wasm-grid-cache on Node.js.
+async function enableGridCache(options) {
+  const opts = options === true ? {} : { ...options };
+  if (isNode) {
+    if (!opts.directory && !opts.memory) {
+      const { tmpdir } = await import('os');
+      const { join } = await import('path');
+      opts.directory = join(tmpdir(), 'proj-wasm-grid-cache');
+    }
+  } else if (!(await enableBrowserFetchWorker())) {
+    console.info('proj-wasm: grid cache needs SharedArrayBuffer (COOP/COEP headers); grids will not be cached.');
+    return false;
+  }
+  const waitFor = globalThis.__projFetchWorkerWaitFor;
+  const reply = waitFor('cache_ready', 'cache_failed');
+  globalThis.__projFetchWorker.postMessage({ cmd: 'cache', options: opts });
+  const { status, error } = await reply;
+  if (status !== 'cache_ready') {
+    console.warn(`proj-wasm: grid cache unavailable: ${error}`);
+    return false;
+  }
+  return true;
+}
+
 if (isNode) {
   // Node.js worker_threads
   const { parentPort } = await import('worker_threads');
-  postMessage = (msg) => parentPort.postMessage(msg);
+  postMessage = (msg, transfer = []) => parentPort.postMessage(msg, transfer);
   onMessage = (handler) => parentPort.on('message', handler);
 } else {
   // Browser Web Worker
-  postMessage = (msg) => self.postMessage(msg);
+  postMessage = (msg, transfer = []) => self.postMessage(msg, transfer);
   onMessage = (handler) => { self.onmessage = (e) => handler(e.data); };
 }
 
+function ensureStaging(bytes) {
+  if (bytes > stagingBytes) {
+    if (stagingPtr) module._free(stagingPtr);
+    // Grow geometrically so slowly increasing sizes do not reallocate every call
+    const size = Math.max(bytes, stagingBytes * 2, 64 * 1024);
+    stagingPtr = module._malloc(size);
+    stagingBytes = stagingPtr ? size : 0;
+    if (!stagingPtr) {
+      throw new Error(`Cannot allocate ${size} bytes of coordinate staging memory`);
+    }
+  }
+  return stagingPtr;
+}
+
+// Hand non-shared coordinate arrays back to the main thread, transferring them
+function returnCoordArrays(coordArrays, transfer) {
+  return coordArrays.map(ca => {
+    if (ca.shared) return null;
+    transfer.push(ca.data.buffer);
+    return ca.data;
+  });
+}
+
 function readOutParams(module, outParamAllocs) {
   const result = {};
   for (const { ptr, size, field } of outParamAllocs) {
@@ -327,326 +416,391 @@ function readStructList(module, listPtr, count, structFields) {
   return entries;
 }
 
-// Handle messages from main thread
-onMessage(async (data) => {
-  const { id, cmd } = data;
+/**
+ * Run one command and return its result. Buffers to hand back without copying
+ * are appended to transfer.
+ */
+async function runCommand(data, transfer) {
+  const { cmd } = data;
+  let result;
+
+  switch (cmd) {
+    case 'init': {
+      // Dynamically imports the Emscripten module (platform-specific path resolution),
+      // writes proj.db and proj.ini to Emscripten's virtual filesystem at /proj/,
+      // and sets up PROJ log callback via addFunction. addFunction is safe here --
+      // the addFunction/GraalVM type mismatch only affects GraalVM's WASM engine,
+      // not Emscripten running in a real JS engine.
+      // Each worker gets its own Emscripten module instance with its own memory.
+      let createProjModule;
+
+      if (isNode) {
+        // Node.js: use file path relative to this module
+        const { fileURLToPath, pathToFileURL } = await import('url');
+        const { dirname, join } = await import('path');
+        const __filename = fileURLToPath(import.meta.url);
+        const __dirname = dirname(__filename);
+
+        const modulePath = pathToFileURL(join(__dirname, 'proj-emscripten.js')).href;
+        const imported = await import(modulePath);
+        createProjModule = imported.default;
+      } else {
+        // Browser: use URL relative to this module
+        const { default: mod } = await import('./proj-emscripten.js');
+        createProjModule = mod;
+      }
 
-  try {
-    let result;
-
-    switch (cmd) {
-      case 'init': {
-        // Dynamically imports the Emscripten module (platform-specific path resolution),
-        // writes proj.db and proj.ini to Emscripten's virtual filesystem at /proj/,
-        // and sets up PROJ log callback via addFunction. addFunction is safe here --
-        // the addFunction/GraalVM type mismatch only affects GraalVM's WASM engine,
-        // not Emscripten running in a real JS engine.
-        // Each worker gets its own Emscripten module instance with its own memory.
-        let createProjModule;
-
-        if (isNode) {
-          // Node.js: use file path relative to this module
-          const { fileURLToPath, pathToFileURL } = await import('url');
-          const { dirname, join } = await import('path');
-          const __filename = fileURLToPath(import.meta.url);
-          const __dirname = dirname(__filename);
-
-          const modulePath = pathToFileURL(join(__dirname, 'proj-emscripten.js')).href;
-          const imported = await import(modulePath);
-          createProjModule = imported.default;
-        } else {
-          // Browser: use URL relative to this module
-          const { default: mod } = await import('./proj-emscripten.js');
-          createProjModule = mod;
-        }
+      module = await createProjModule({});
 
-        module = await createProjModule({});
+      // Write proj.db to virtual filesystem
+      module.FS.mkdir('/proj');
 
-        // Write proj.db to virtual filesystem
-        module.FS.mkdir('/proj');
+      // Handle different data formats (ArrayBuffer, Uint8Array, Buffer)
+      const projDbArray = data.projDb instanceof Uint8Array
+        ? data.projDb
+        : new Uint8Array(data.projDb);
 
-        // Handle different data formats (ArrayBuffer, Uint8Array, Buffer)
-        const projDbArray = data.projDb instanceof Uint8Array
-          ? data.projDb
-          : new Uint8Array(data.projDb);
+      module.FS.writeFile('/proj/proj.db', projDbArray);
+      module.FS.writeFile('/proj/proj.ini', data.projIni);
 
-        module.FS.writeFile('/proj/proj.db', projDbArray);
-        module.FS.writeFile('/proj/proj.ini', data.projIni);
+      logCallbackPtr = module.addFunction((userData, level, msgPtr) => {
+        const msg = module.UTF8ToString(msgPtr);
+        const levelName = level === PJ_LOG_ERROR ? 'ERROR' :
+                         level === PJ_LOG_DEBUG ? 'DEBUG' :
+                         level === PJ_LOG_TRACE ? 'TRACE' : `L${level}`;
+        if (level === PJ_LOG_ERROR || logLevel >= 2) {
+          console.log(`[PROJ ${levelName}] ${msg}`);
+        }
+      }, 'viii');
 
-        logCallbackPtr = module.addFunction((userData, level, msgPtr) => {
-          const msg = module.UTF8ToString(msgPtr);
-          const levelName = level === PJ_LOG_ERROR ? 'ERROR' :
-                           level === PJ_LOG_DEBUG ? 'DEBUG' :
-                           level === PJ_LOG_TRACE ? 'TRACE' : `L${level}`;
-          if (level === PJ_LOG_ERROR || logLevel >= 2) {
-            console.log(`[PROJ ${levelName}] ${msg}`);
-          }
-        }, 'viii');
+      const gridCache = data.gridCache ? await enableGridCache(data.gridCache) : false;
+      result = { status: 'ready', gridCache };
+      break;
+    }
 
-        result = { status: 'ready' };
-        break;
+    case 'context_create': {
+      const ptr = module.ccall('proj_context_create', 'number', [], []);
+      module.ccall('proj_context_set_database_path', 'number',
+        ['number', 'string'], [ptr, '/proj/proj.db']);
+      module.ccall('proj_context_set_enable_network', 'number',
+        ['number', 'number'], [ptr, 1]);
+
+      if (logCallbackPtr) {
+        module.ccall('proj_log_func', null,
+          ['number', 'number', 'number'], [ptr, 0, logCallbackPtr]);
+        module.ccall('proj_log_level', 'number',
+          ['number', 'number'], [ptr, PJ_LOG_ERROR]);
       }
 
-      case 'context_create': {
-        const ptr = module.ccall('proj_context_create', 'number', [], []);
-        module.ccall('proj_context_set_database_path', 'number',
-          ['number', 'string'], [ptr, '/proj/proj.db']);
-        module.ccall('proj_context_set_enable_network', 'number',
-          ['number', 'number'], [ptr, 1]);
-
-        if (logCallbackPtr) {
-          module.ccall('proj_log_func', null,
-            ['number', 'number', 'number'], [ptr, 0, logCallbackPtr]);
-          module.ccall('proj_log_level', 'number',
-            ['number', 'number'], [ptr, PJ_LOG_ERROR]);
-        }
+      const ctxId = nextContextId++;
+      contexts.set(ctxId, ptr);
+      result = { ctxId, ptr };
+      break;
+    }
 
-        const ctxId = nextContextId++;
-        contexts.set(ctxId, ptr);
-        result = { ctxId, ptr };
-        break;
-      }
+    case 'set_log_level': {
+      logLevel = data.level || 0;
+      result = { ok: true, level: logLevel };
+      break;
+    }
 
-      case 'set_log_level': {
-        logLevel = data.level || 0;
-        result = { ok: true, level: logLevel };
-        break;
+    case 'context_destroy': {
+      const { ctxId } = data;
+      const ptr = contexts.get(ctxId);
+      if (ptr) {
+        module.ccall('proj_context_destroy', null, ['number'], [ptr]);
+        contexts.delete(ctxId);
       }
+      result = { ok: true };
+      break;
+    }
 
-      case 'context_destroy': {
-        const { ctxId } = data;
-        const ptr = contexts.get(ctxId);
-        if (ptr) {
-          module.ccall('proj_context_destroy', null, ['number'], [ptr]);
-          contexts.delete(ctxId);
+    case 'ccall': {
+      const { fn: fnName, returnType, argTypes, args, projReturns, coordArrays } = data;
+
+      // If coord arrays attached, copy them into the staging buffer
+      let coordAllocations = null;
+      if (coordArrays && coordArrays.length > 0) {
+        coordAllocations = [];
+        let bytesNeeded = 0;
+        for (const ca of coordArrays) bytesNeeded += ca.numFloats * 8;
+        let ptr = ensureStaging(bytesNeeded);
+        for (const ca of coordArrays) {
+          const heapOffset = ptr / 8;
+          module.HEAPF64.set(ca.data, heapOffset);
+          args[ca.argIdx] = ptr;
+          coordAllocations.push({ heapOffset, numFloats: ca.numFloats });
+          ptr += ca.numFloats * 8;
         }
-        result = { ok: true };
-        break;
       }
 
-      case 'ccall': {
-        const { fn: fnName, returnType, argTypes, args, projReturns, coordArrays } = data;
-
-        // If coord arrays attached, alloc temp WASM memory and copy data in
-        let coordAllocations = null;
-        if (coordArrays && coordArrays.length > 0) {
-          coordAllocations = [];
-          for (const ca of coordArrays) {
-            const bytesNeeded = ca.numFloats * 8;
-            const mallocPtr = module._malloc(bytesNeeded);
-            const heapOffset = mallocPtr / 8;
-            module.HEAPF64.set(ca.data, heapOffset);
-            args[ca.argIdx] = mallocPtr;
-            coordAllocations.push({ mallocPtr, heapOffset, numFloats: ca.numFloats });
+      // For out-params: allocate output pointers, append to args/argTypes
+      let outParamAllocs = null;
+      if (projReturns === 'out-params' && data.outFields) {
+        outParamAllocs = [];
+        for (const field of data.outFields) {
+          let size;
+          if (field.type === 'double-array') {
+            size = args[field.countArgIdx] * 8;
+          } else {
+            size = field.type === 'double' ? 8 : 4;
           }
-        }
-
-        // For out-params: allocate output pointers, append to args/argTypes
-        let outParamAllocs = null;
-        if (projReturns === 'out-params' && data.outFields) {
-          outParamAllocs = [];
-          for (const field of data.outFields) {
-            let size;
-            if (field.type === 'double-array') {
-              size = args[field.countArgIdx] * 8;
-            } else {
-              size = field.type === 'double' ? 8 : 4;
-            }
-            const ptr = module._malloc(size);
-            outParamAllocs.push({ ptr, size, field });
+          const ptr = module._malloc(size);
+          outParamAllocs.push({ ptr, size, field });
+          if (field.argIdx !== undefined && field.argIdx <= args.length) {
+            // argTypes already covers every C arg; slot the pointer into place
+            args.splice(field.argIdx, 0, ptr);
+          } else {
             args.push(ptr);
             argTypes.push('number');
           }
         }
+      }
 
-        // For struct-list: allocate count pointer and optional params
-        if (projReturns === 'struct-list') {
-          const countPtr = module._malloc(4);
-          module.setValue(countPtr, 0, 'i32');
-          args[args.length - 1] = countPtr;
-          if (data.structParamsCreate) {
-            const paramsPtr = module.ccall(data.structParamsCreate, 'number', [], []);
-            args[args.length - 2] = paramsPtr;
-            data._paramsPtr = paramsPtr;
-          }
+      // For struct-list: allocate count pointer and optional params
+      if (projReturns === 'struct-list') {
+        const countPtr = module._malloc(4);
+        module.setValue(countPtr, 0, 'i32');
+        args[args.length - 1] = countPtr;
+        if (data.structParamsCreate) {
+          const paramsPtr = module.ccall(data.structParamsCreate, 'number', [], []);
+          args[args.length - 2] = paramsPtr;
+          data._paramsPtr = paramsPtr;
         }
+      }
 
-        const rawResult = module.ccall(fnName, returnType, argTypes, args);
+      const rawResult = module.ccall(fnName, returnType, argTypes, args);
 
-        // Handle special return types that need post-processing in worker
-        if (coordAllocations) {
-          const coordData = [];
-          for (const alloc of coordAllocations) {
-            coordData.push(
-              Array.from(module.HEAPF64.subarray(alloc.heapOffset, alloc.heapOffset + alloc.numFloats))
-            );
-            module._free(alloc.mallocPtr);
+      // Handle special return types that need post-processing in worker
+      if (coordAllocations) {
+        // Results go into the arrays the caller sent: in place for shared
+        // buffers, otherwise into the transferred array, which goes back.
+        // HEAPF64 is re-read here because the call may have grown memory.
+        coordAllocations.forEach((alloc, i) => {
+          coordArrays[i].data.set(
+            module.HEAPF64.subarray(alloc.heapOffset, alloc.heapOffset + alloc.numFloats));
+        });
+        const coordData = returnCoordArrays(coordArrays, transfer);
+        if (projReturns === 'string-list' && rawResult !== 0) {
+          const strings = [];
+          let offset = 0;
+          while (true) {
+            const strPtr = module.getValue(rawResult + offset * 4, '*');
+            if (strPtr === 0) break;
+            strings.push(module.UTF8ToString(strPtr));
+            offset++;
           }
-          if (projReturns === 'string-list' && rawResult !== 0) {
-            const strings = [];
-            let offset = 0;
-            while (true) {
-              const strPtr = module.getValue(rawResult + offset * 4, '*');
-              if (strPtr === 0) break;
-              strings.push(module.UTF8ToString(strPtr));
-              offset++;
-            }
-            result = { result: strings, coordData };
-          } else if (projReturns === 'struct-list' && rawResult !== 0) {
-            const countPtr = args[args.length - 1];
-            const count = module.getValue(countPtr, 'i32');
-            const structResult = readStructList(module, rawResult, count, data.structFields);
-            module.ccall(data.structDestroyFn, null, ['number'], [rawResult]);
-            if (data._paramsPtr && data.structParamsDestroy) {
-              module.ccall(data.structParamsDestroy, null, ['number'], [data._paramsPtr]);
-            }
-            module._free(countPtr);
-            result = { result: structResult, coordData };
-          } else if (projReturns === 'struct-list' && rawResult === 0) {
-            const countPtr = args[args.length - 1];
-            if (data._paramsPtr && data.structParamsDestroy) {
-              module.ccall(data.structParamsDestroy, null, ['number'], [data._paramsPtr]);
-            }
-            module._free(countPtr);
-            result = { result: [], coordData };
-          } else if (projReturns === 'out-params' && outParamAllocs) {
-            if (rawResult === 0) {
-              freeOutParams(module, outParamAllocs);
-              result = { result: null, coordData };
-            } else {
-              result = { result: readOutParams(module, outParamAllocs), coordData };
-              freeOutParams(module, outParamAllocs);
-            }
+          result = { result: strings, coordData };
+        } else if (projReturns === 'struct-list' && rawResult !== 0) {
+          const countPtr = args[args.length - 1];
+          const count = module.getValue(countPtr, 'i32');
+          const structResult = readStructList(module, rawResult, count, data.structFields);
+          module.ccall(data.structDestroyFn, null, ['number'], [rawResult]);
+          if (data._paramsPtr && data.structParamsDestroy) {
+            module.ccall(data.structParamsDestroy, null, ['number'], [data._paramsPtr]);
+          }
+          module._free(countPtr);
+          result = { result: structResult, coordData };
+        } else if (projReturns === 'struct-list' && rawResult === 0) {
+          const countPtr = args[args.length - 1];
+          if (data._paramsPtr && data.structParamsDestroy) {
+            module.ccall(data.structParamsDestroy, null, ['number'], [data._paramsPtr]);
+          }
+          module._free(countPtr);
+          result = { result: [], coordData };
+        } else if (projReturns === 'out-params' && outParamAllocs) {
+          if (rawResult === 0) {
+            freeOutParams(module, outParamAllocs);
+            result = { result: null, coordData };
           } else {
-            result = { result: rawResult, coordData };
+            result = { result: readOutParams(module, outParamAllocs), coordData };
+            freeOutParams(module, outParamAllocs);
           }
         } else {
-          if (projReturns === 'string-list' && rawResult !== 0) {
-            const strings = [];
-            let offset = 0;
-            while (true) {
-              const strPtr = module.getValue(rawResult + offset * 4, '*');
-              if (strPtr === 0) break;
-              strings.push(module.UTF8ToString(strPtr));
-              offset++;
-            }
-            result = strings;
-          } else if (projReturns === 'struct-list' && rawResult !== 0) {
-            const countPtr = args[args.length - 1];
-            const count = module.getValue(countPtr, 'i32');
-            result = readStructList(module, rawResult, count, data.structFields);
-            module.ccall(data.structDestroyFn, null, ['number'], [rawResult]);
-            if (data._paramsPtr && data.structParamsDestroy) {
-              module.ccall(data.structParamsDestroy, null, ['number'], [data._paramsPtr]);
-            }
-            module._free(countPtr);
-          } else if (projReturns === 'struct-list' && rawResult === 0) {
-            const countPtr = args[args.length - 1];
-            if (data._paramsPtr && data.structParamsDestroy) {
-              module.ccall(data.structParamsDestroy, null, ['number'], [data._paramsPtr]);
-            }
-            module._free(countPtr);
-            result = [];
-          } else if (projReturns === 'out-params' && outParamAllocs) {
-            if (rawResult === 0) {
-              freeOutParams(module, outParamAllocs);
-              result = null;
-            } else {
-              result = readOutParams(module, outParamAllocs);
-              freeOutParams(module, outParamAllocs);
-            }
+          result = { result: rawResult, coordData };
+        }
+      } else {
+        if (projReturns === 'string-list' && rawResult !== 0) {
+          const strings = [];
+          let offset = 0;
+          while (true) {
+            const strPtr = module.getValue(rawResult + offset * 4, '*');
+            if (strPtr === 0) break;
+            strings.push(module.UTF8ToString(strPtr));
+            offset++;
+          }
+          result = strings;
+        } else if (projReturns === 'struct-list' && rawResult !== 0) {
+          const countPtr = args[args.length - 1];
+          const count = module.getValue(countPtr, 'i32');
+          result = readStructList(module, rawResult, count, data.structFields);
+          module.ccall(data.structDestroyFn, null, ['number'], [rawResult]);
+          if (data._paramsPtr && data.structParamsDestroy) {
+            module.ccall(data.structParamsDestroy, null, ['number'], [data._paramsPtr]);
+          }
+          module._free(countPtr);
+        } else if (projReturns === 'struct-list' && rawResult === 0) {
+          const countPtr = args[args.length - 1];
+          if (data._paramsPtr && data.structParamsDestroy) {
+            module.ccall(data.structParamsDestroy, null, ['number'], [data._paramsPtr]);
+          }
+          module._free(countPtr);
+          result = [];
+        } else if (projReturns === 'out-params' && outParamAllocs) {
+          if (rawResult === 0) {
+            freeOutParams(module, outParamAllocs);
+            result = null;
           } else {
-            result = rawResult;
+            result = readOutParams(module, outParamAllocs);
+            freeOutParams(module, outParamAllocs);
           }
+        } else {
+          result = rawResult;
         }
-        break;
       }
+      break;
+    }
 
-      case 'malloc': {
-        const { size } = data;
-        result = module._malloc(size);
-        break;
-      }
+    case 'malloc': {
+      const { size } = data;
+      result = module._malloc(size);
+      break;
+    }
 
-      case 'free': {
-        const { ptr } = data;
-        module._free(ptr);
-        result = { ok: true };
-        break;
-      }
+    case 'free': {
+      const { ptr } = data;
+      module._free(ptr);
+      result = { ok: true };
+      break;
+    }
 
-      case 'heapf64_set': {
-        const { offset, values } = data;
-        module.HEAPF64.set(values, offset);
-        result = { ok: true };
-        break;
-      }
+    case 'heapf64_set': {
+      const { offset, values } = data;
+      module.HEAPF64.set(values, offset);
+      result = { ok: true };
+      break;
+    }
 
-      case 'heapf64_get': {
-        const { offset, length } = data;
-        result = Array.from(module.HEAPF64.subarray(offset, offset + length));
-        break;
-      }
+    case 'heapf64_get': {
+      const { offset, length } = data;
+      result = Array.from(module.HEAPF64.subarray(offset, offset + length));
+      break;
+    }
 
-      case 'read_string_array': {
-        // Read a null-terminated array of string pointers (char**)
-        const { ptr } = data;
-        const strings = [];
-        let offset = 0;
-        while (true) {
-          const strPtr = module.getValue(ptr + offset * 4, '*');
-          if (strPtr === 0) break;
-          strings.push(module.UTF8ToString(strPtr));
-          offset++;
-        }
-        result = strings;
-        break;
+    case 'read_string_array': {
+      // Read a null-terminated array of string pointers (char**)
+      const { ptr } = data;
+      const strings = [];
+      let offset = 0;
+      while (true) {
+        const strPtr = module.getValue(ptr + offset * 4, '*');
+        if (strPtr === 0) break;
+        strings.push(module.UTF8ToString(strPtr));
+        offset++;
       }
+      result = strings;
+      break;
+    }
 
-      case 'heapu8_set': {
-        const { offset, values } = data;
-        module.HEAPU8.set(values, offset);
-        result = { ok: true };
-        break;
-      }
+    case 'heapu8_set': {
+      const { offset, values } = data;
+      module.HEAPU8.set(values, offset);
+      result = { ok: true };
+      break;
+    }
 
-      case 'heapu8_get': {
-        const { offset, length } = data;
-        result = Array.from(module.HEAPU8.subarray(offset, offset + length));
-        break;
-      }
+    case 'heapu8_get': {
+      const { offset, length } = data;
+      result = Array.from(module.HEAPU8.subarray(offset, offset + length));
+      break;
+    }
 
-      case 'string_to_utf8': {
-        const { str, ptr, maxLength } = data;
-        module.stringToUTF8(str, ptr, maxLength);
-        result = { ok: true };
-        break;
-      }
+    case 'string_to_utf8': {
+      const { str, ptr, maxLength } = data;
+      module.stringToUTF8(str, ptr, maxLength);
+      result = { ok: true };
+      break;
+    }
 
-      case 'utf8_to_string': {
-        const { ptr } = data;
-        result = module.UTF8ToString(ptr);
-        break;
+    case 'utf8_to_string': {
+      const { ptr } = data;
+      result = module.UTF8ToString(ptr);
+      break;
+    }
+
+    case 'grid_cache_stats': {
+      // Counters from the fetch-worker's grid cache, or null when it is off
+      if (globalThis.__projFetchWorker) {
+        const reply = globalThis.__projFetchWorkerWaitFor('cache_stats');
+        globalThis.__projFetchWorker.postMessage({ cmd: 'cache_stats' });
+        result = (await reply).stats;
+      } else {
+        result = null;
       }
+      break;
+    }
 
-      case 'shutdown': {
-        // Shutdown the fetch worker if it exists
-        if (globalThis.__projFetchWorker) {
-          globalThis.__projFetchWorker.postMessage({ cmd: 'shutdown' });
-          globalThis.__projFetchWorker.terminate();
-          globalThis.__projFetchWorker = null;
-        }
-        result = { ok: true };
-        break;
+    case 'shutdown': {
+      if (stagingPtr) {
+        module._free(stagingPtr);
+        stagingPtr = 0;
+        stagingBytes = 0;
       }
+      // Shutdown the fetch worker if it exists
+      if (globalThis.__projFetchWorker) {
+        globalThis.__projFetchWorker.postMessage({ cmd: 'shutdown' });
+        globalThis.__projFetchWorker.terminate();
+        globalThis.__projFetchWorker = null;
+      }
+      result = { ok: true };
+      break;
+    }
+
+    default:
+      throw new Error(`Unknown command: ${cmd}`);
+  }
+
+  return result;
+}
+
+/**
+ * Reply fields for a failed command. Transferred coordinate arrays must go
+ * back even on failure, or the caller's buffers stay detached.
+ */
+function failure(data, error, transfer) {
+  const coordArrays = data.cmd === 'ccall' ? data.coordArrays : null;
+  const coordData = coordArrays && coordArrays.length > 0
+    ? returnCoordArrays(coordArrays, transfer)
+    : undefined;
+  return { error: error.message, stack: error.stack, coordData };
+}
 
-      default:
-        throw new Error(`Unknown command: ${cmd}`);
+// Handle messages from main thread. A 'batch' message carries several
+// commands coalesced by the loader; they run in order and are answered with
+// one reply holding a result or error per command.
+onMessage(async (data) => {
+  const { id } = data;
+  const transfer = [];
+
+  if (data.cmd === 'batch') {
+    const results = [];
+    for (const call of data.calls) {
+      try {
+        results.push({ result: await runCommand(call, transfer) });
+      } catch (error) {
+        results.push(failure(call, error, transfer));
+      }
     }
+    postMessage({ id, results }, [...new Set(transfer)]);
+    return;
+  }
 
-    postMessage({ id, result });
+  try {
+    const result = await runCommand(data, transfer);
+    postMessage({ id, result }, transfer);
   } catch (error) {
-    postMessage({ id, error: error.message, stack: error.stack });
+    const failTransfer = [];
+    postMessage({ id, ...failure(data, error, failTransfer) }, failTransfer);
   }
 });
 
@@ -0,0 +1,118 @@
+package net.willcohen.proj;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vector API versions of the {@link FastPath} kernels.
+ *
+ * Coordinates are interleaved [x, y, z, t] doubles, so each lane is gathered
+ * with a stride-4 index map and scattered back the same way. Only whole
+ * vectors are processed; the caller finishes the tail with the scalar kernel.
+ *
+ * This file lives in its own source set, compiled with
+ * {@code --add-modules jdk.incubator.vector} only by the opt-in vector build.
+ * FastPath loads it reflectively, and only when the module is in the boot
+ * layer, so the default build and runtime never touch the incubator.
+ */
+final class VectorKernels implements FastPath.VectorEngine {
+
+    private static final VectorSpecies<Double> S = DoubleVector.SPECIES_PREFERRED;
+    private static final int[] STRIDE = new int[S.length()];
+    static {
+        for (int i = 0; i < STRIDE.length; i++) STRIDE[i] = i * 4;
+    }
+
+    VectorKernels() {}
+
+    @Override
+    public int lanes() {
+        return S.length();
+    }
+
+    /**
+     * Transform as many whole vectors of coordinates as fit in n.
+     * @return the number of coordinates processed
+     */
+    @Override
+    public int apply(FastPath.Kernel k, double[] c, int n, boolean toGeographic, int lonIdx, int latIdx) {
+        int lanes = S.length();
+        int whole = n - (n % lanes);
+        for (int i = 0; i < whole; i += lanes) {
+            int b = i * 4;
+            if (k.op == FastPath.Op.WEBMERC) {
+                if (!toGeographic) webmercFwd(k, c, b, lonIdx, latIdx);
+                else webmercInv(k, c, b, lonIdx, latIdx);
+            } else {
+                if (!toGeographic) cartFwd(k, c, b, lonIdx, latIdx);
+                else cartInv(k, c, b, lonIdx, latIdx);
+            }
+        }
+        return whole;
+    }
+
+    private static DoubleVector load(double[] c, int b, int field) {
+        return DoubleVector.fromArray(S, c, b + field, STRIDE, 0);
+    }
+
+    private static void store(DoubleVector v, double[] c, int b, int field) {
+        v.intoArray(c, b + field, STRIDE, 0);
+    }
+
+    private static void webmercFwd(FastPath.Kernel k, double[] c, int b, int lonIdx, int latIdx) {
+        DoubleVector lam = load(c, b, lonIdx).mul(FastPath.DEG_TO_RAD);
+        DoubleVector t = load(c, b, latIdx).mul(FastPath.DEG_TO_RAD).lanewise(VectorOperators.TAN);
+        DoubleVector at = t.abs();
+        DoubleVector asinh = at.add(at.mul(at).add(1.0).sqrt()).lanewise(VectorOperators.LOG);
+        VectorMask<Double> negative = t.compare(VectorOperators.LT, 0.0);
+        asinh = asinh.blend(asinh.neg(), negative);
+        store(lam.mul(k.a), c, b, 0);
+        store(asinh.mul(k.a), c, b, 1);
+    }
+
+    private static void webmercInv(FastPath.Kernel k, double[] c, int b, int lonIdx, int latIdx) {
+        DoubleVector lam = load(c, b, 0).div(k.a);
+        DoubleVector phi = load(c, b, 1).div(k.a)
+            .lanewise(VectorOperators.SINH)
+            .lanewise(VectorOperators.ATAN);
+        store(lam.mul(FastPath.RAD_TO_DEG), c, b, lonIdx);
+        store(phi.mul(FastPath.RAD_TO_DEG), c, b, latIdx);
+    }
+
+    private static void cartFwd(FastPath.Kernel k, double[] c, int b, int lonIdx, int latIdx) {
+        DoubleVector lam = load(c, b, lonIdx).mul(FastPath.DEG_TO_RAD);
+        DoubleVector phi = load(c, b, latIdx).mul(FastPath.DEG_TO_RAD);
+        DoubleVector h = load(c, b, 2);
+        DoubleVector sinphi = phi.lanewise(VectorOperators.SIN);
+        DoubleVector cosphi = phi.lanewise(VectorOperators.COS);
+        DoubleVector nrc = DoubleVector.broadcast(S, k.a)
+            .div(sinphi.mul(sinphi).mul(-k.es).add(1.0).sqrt());
+        DoubleVector r = nrc.add(h).mul(cosphi);
+        store(r.mul(lam.lanewise(VectorOperators.COS)), c, b, 0);
+        store(r.mul(lam.lanewise(VectorOperators.SIN)), c, b, 1);
+        store(nrc.mul(1 - k.es).add(h).mul(sinphi), c, b, 2);
+    }
+
+    private static void cartInv(FastPath.Kernel k, double[] c, int b, int lonIdx, int latIdx) {
+        double b2 = k.a * Math.sqrt(1 - k.es);
+        double e2s = k.es / (1 - k.es);
+        DoubleVector x = load(c, b, 0);
+        DoubleVector y = load(c, b, 1);
+        DoubleVector z = load(c, b, 2);
+        DoubleVector p = x.lanewise(VectorOperators.HYPOT, y);
+        DoubleVector theta = z.mul(k.a).lanewise(VectorOperators.ATAN2, p.mul(b2));
+        DoubleVector ct = theta.lanewise(VectorOperators.COS);
+        DoubleVector st = theta.lanewise(VectorOperators.SIN);
+        DoubleVector phi = z.add(st.mul(st).mul(st).mul(e2s * b2))
+            .lanewise(VectorOperators.ATAN2, p.sub(ct.mul(ct).mul(ct).mul(k.es * k.a)));
+        DoubleVector lam = y.lanewise(VectorOperators.ATAN2, x);
+        DoubleVector sinphi = phi.lanewise(VectorOperators.SIN);
+        DoubleVector nrc = DoubleVector.broadcast(S, k.a)
+            .div(sinphi.mul(sinphi).mul(-k.es).add(1.0).sqrt());
+        store(p.div(phi.lanewise(VectorOperators.COS)).sub(nrc), c, b, 2);
+        store(lam.mul(FastPath.RAD_TO_DEG), c, b, lonIdx);
+        store(phi.mul(FastPath.RAD_TO_DEG), c, b, latIdx);
+    }
+}
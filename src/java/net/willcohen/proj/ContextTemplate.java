@@ -0,0 +1,124 @@
+package net.willcohen.proj;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A context configured once and copied with proj_context_clone.
+ *
+ * {@link ProjContext#create()} sets the database path and registers logging
+ * and network callbacks on every call. A template does that once; each
+ * {@link #newContext()} copies the configuration, including the callback
+ * registrations, so short-lived per-task contexts stay cheap:
+ * <pre>
+ * try (ContextTemplate template = ContextTemplate.create()
+ *          .gridCache(true, null, 300, 86400)) {
+ *     try (ProjContext ctx = template.newContext();
+ *          Transformer t = ctx.createCrsToCrs("EPSG:4326", "EPSG:2249")) {
+ *         ...
+ *     }
+ * }
+ * </pre>
+ * Configure the template before creating contexts from it; later changes do
+ * not reach existing clones. {@link #newContext()} may be called from several
+ * threads at once.
+ */
+public final class ContextTemplate implements AutoCloseable {
+    private final Object context;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private ContextTemplate(Object context) {
+        this.context = context;
+    }
+
+    /**
+     * Create a template with the bundled database and network access configured.
+     * @return a new template
+     */
+    public static ContextTemplate create() {
+        return new ContextTemplate(PROJ.contextTemplate());
+    }
+
+    /**
+     * The underlying context object, for the static {@link PROJ} methods.
+     * @return the context object
+     */
+    public Object handle() {
+        if (closed.get()) throw new IllegalStateException("ContextTemplate is closed");
+        return context;
+    }
+
+    /**
+     * Use another proj.db and optional auxiliary databases.
+     * @param dbPath path to proj.db
+     * @param auxDbPaths auxiliary database paths
+     * @return this template
+     */
+    public ContextTemplate databasePath(String dbPath, String... auxDbPaths) {
+        PROJ.configureContext(handle(), "database-path", dbPath, "aux-db-paths", auxDbPaths);
+        return this;
+    }
+
+    /**
+     * Set the PROJ log level.
+     * @param level one of the PJ_LOG_* levels (0 none, 1 error, 2 debug, 3 trace)
+     * @return this template
+     */
+    public ContextTemplate logLevel(int level) {
+        PROJ.configureContext(handle(), "log-level", level);
+        return this;
+    }
+
+    /**
+     * Set the CDN endpoint used to fetch network grids.
+     * @param url the endpoint URL
+     * @return this template
+     */
+    public ContextTemplate urlEndpoint(String url) {
+        PROJ.configureContext(handle(), "url-endpoint", url);
+        return this;
+    }
+
+    /**
+     * Configure PROJ's cache of downloaded grid chunks.
+     * @param enabled whether the cache is used
+     * @param filename cache file, or null for PROJ's default
+     * @param maxSizeMb maximum size in MB, or a negative value for unlimited
+     * @param ttlSeconds seconds before cached chunks are revalidated
+     * @return this template
+     */
+    public ContextTemplate gridCache(boolean enabled, String filename, int maxSizeMb, int ttlSeconds) {
+        PROJ.configureContext(handle(),
+            "grid-cache-enabled", enabled,
+            "grid-cache-filename", filename,
+            "grid-cache-max-size-mb", maxSizeMb,
+            "grid-cache-ttl-seconds", ttlSeconds);
+        return this;
+    }
+
+    /**
+     * Create a context with this template's configuration.
+     * @return a new context; close it when done
+     */
+    public ProjContext newContext() {
+        return ProjContext.wrap(PROJ.contextClone(handle()));
+    }
+
+    /**
+     * Whether {@link #close()} has been called.
+     * @return true once closed
+     */
+    public boolean isClosed() {
+        return closed.get();
+    }
+
+    /**
+     * Destroy the template's native context. Contexts created from it are
+     * independent copies and stay usable. Safe to call more than once.
+     */
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            Invokers.DESTROY.invoke(context);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package net.willcohen.proj;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A pooled coordinate array of interleaved [x, y, z, t] doubles.
+ *
+ * Buffers are leased from the coord-array pool (see
+ * {@link PROJ#acquireCoordArray}); {@link #close()} returns the native memory
+ * to the pool, which frees it outright once the pool is full. Contents of a
+ * new buffer are unspecified until set.
+ */
+public final class CoordBuffer implements AutoCloseable {
+    private final Object coordArray;
+    private final int size;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private CoordBuffer(Object coordArray, int size) {
+        this.coordArray = coordArray;
+        this.size = size;
+    }
+
+    /**
+     * Lease a buffer for n coordinates.
+     * @param n number of coordinates
+     * @return the buffer
+     */
+    public static CoordBuffer acquire(int n) {
+        if (n <= 0) throw new IllegalArgumentException("n must be positive: " + n);
+        return new CoordBuffer(Invokers.ACQUIRE_COORD_ARRAY.invoke(n), n);
+    }
+
+    /**
+     * Lease a buffer holding the given interleaved [x, y, z, t] coordinates.
+     * @param interleaved coordinates, length a multiple of 4
+     * @return the buffer
+     */
+    public static CoordBuffer of(double[] interleaved) {
+        if (interleaved.length == 0 || interleaved.length % 4 != 0) {
+            throw new IllegalArgumentException("Interleaved length must be a positive multiple of 4: " + interleaved.length);
+        }
+        CoordBuffer buf = acquire(interleaved.length / 4);
+        return buf.set(interleaved);
+    }
+
+    /**
+     * Number of coordinates in the buffer.
+     * @return the size
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The underlying coordinate array, for the static {@link PROJ} methods.
+     * @return the coordinate array object
+     */
+    public Object handle() {
+        if (closed.get()) throw new IllegalStateException("CoordBuffer is closed");
+        return coordArray;
+    }
+
+    /**
+     * Copy interleaved [x, y, z, t] coordinates into the start of the buffer.
+     * @param interleaved coordinates, length a multiple of 4 and at most 4 * size()
+     * @return this buffer
+     */
+    public CoordBuffer set(double[] interleaved) {
+        if (interleaved.length % 4 != 0 || interleaved.length > size * 4) {
+            throw new IllegalArgumentException("Interleaved length " + interleaved.length
+                + " must be a multiple of 4 and at most " + (size * 4));
+        }
+        Invokers.SET_COORDS_FLAT.invoke(handle(), interleaved);
+        return this;
+    }
+
+    /**
+     * Copy the first out.length / 4 coordinates into out as interleaved [x, y, z, t].
+     * @param out destination array
+     * @return out
+     */
+    public double[] getAll(double[] out) {
+        checkLength(out.length / 4);
+        Invokers.GET_COORDS_FLAT.invoke(handle(), out);
+        return out;
+    }
+
+    /**
+     * Copy the X values of the first out.length coordinates into out.
+     * @param out destination array
+     * @return out
+     */
+    public double[] getXcol(double[] out) {
+        return getCol(0, out);
+    }
+
+    /**
+     * Copy the Y values of the first out.length coordinates into out.
+     * @param out destination array
+     * @return out
+     */
+    public double[] getYcol(double[] out) {
+        return getCol(1, out);
+    }
+
+    /**
+     * Copy the Z values of the first out.length coordinates into out.
+     * @param out destination array
+     * @return out
+     */
+    public double[] getZcol(double[] out) {
+        return getCol(2, out);
+    }
+
+    /**
+     * Copy the T (time) values of the first out.length coordinates into out.
+     * @param out destination array
+     * @return out
+     */
+    public double[] getTcol(double[] out) {
+        return getCol(3, out);
+    }
+
+    private double[] getCol(int idx, double[] out) {
+        checkLength(out.length);
+        Invokers.GET_COL.invoke(handle(), idx, out);
+        return out;
+    }
+
+    private void checkLength(int n) {
+        if (n > size) {
+            throw new IllegalArgumentException(n + " coordinates requested from a buffer of " + size);
+        }
+    }
+
+    /**
+     * Whether {@link #close()} has been called.
+     * @return true once closed
+     */
+    public boolean isClosed() {
+        return closed.get();
+    }
+
+    /**
+     * Return the buffer to the pool. Safe to call more than once.
+     */
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            Invokers.RELEASE_COORD_ARRAY.invoke(coordArray);
+        }
+    }
+}
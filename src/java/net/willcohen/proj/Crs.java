@@ -0,0 +1,94 @@
+package net.willcohen.proj;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A CRS (or any other PROJ object) that frees its native memory in {@link #close()}.
+ */
+public final class Crs implements AutoCloseable {
+    private final Object pj;
+    private final ProjContext context;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    Crs(Object pj, ProjContext context) {
+        if (pj == null) throw new IllegalArgumentException("PROJ could not create the object");
+        this.pj = pj;
+        this.context = context;
+    }
+
+    /**
+     * Create a CRS from the database using the default context.
+     * @param authName authority name (e.g., "EPSG")
+     * @param code the code (e.g., "4326")
+     * @return the CRS
+     */
+    public static Crs fromDatabase(String authName, String code) {
+        return new Crs(PROJ.createFromDatabase(authName, code), null);
+    }
+
+    /**
+     * Take ownership of a PJ object from the static {@link PROJ} methods.
+     * {@link #close()} destroys it.
+     * @param pj the PJ object
+     * @return the wrapped CRS
+     */
+    public static Crs wrap(Object pj) {
+        return new Crs(pj, null);
+    }
+
+    /**
+     * The underlying PJ object, for the static {@link PROJ} methods.
+     * @return the PJ object
+     */
+    public Object handle() {
+        if (closed.get()) throw new IllegalStateException("Crs is closed");
+        return pj;
+    }
+
+    /**
+     * The name of the CRS.
+     * @return the name
+     */
+    public String name() {
+        return PROJ.getName(handle());
+    }
+
+    /**
+     * The area of use of the CRS.
+     * @return map with "westLonDegree", "southLatDegree", "eastLonDegree",
+     *         "northLatDegree" and "areaName", or null if unknown
+     */
+    public Map<String, Object> areaOfUse() {
+        return PROJ.getAreaOfUse(context != null ? context.handle() : null, handle());
+    }
+
+    /**
+     * Create a transformation from this CRS to another, in this CRS's context.
+     * @param target target CRS
+     * @return the transformer
+     */
+    public Transformer transformerTo(Crs target) {
+        return context != null
+            ? context.createCrsToCrs(this, target)
+            : new Transformer(PROJ.createCrsToCrsFromPj(handle(), target.handle()), null);
+    }
+
+    /**
+     * Whether {@link #close()} has been called.
+     * @return true once closed
+     */
+    public boolean isClosed() {
+        return closed.get();
+    }
+
+    /**
+     * Destroy the native object. Safe to call more than once.
+     */
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            Invokers.DESTROY.invoke(pj);
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package net.willcohen.proj;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pure-Java fast paths for high-volume, grid-free operations.
+ *
+ * A transformation qualifies when its {@code proj_as_proj_string} pipeline is
+ * one of the supported forms, in either direction:
+ * <pre>
+ * [+proj=axisswap +order=2,1] +proj=unitconvert +xy_in=deg +xy_out=rad +proj=webmerc (WGS84/GRS80)
+ * [+proj=axisswap +order=2,1] +proj=unitconvert +xy_in=deg +xy_out=rad +proj=cart    (WGS84/GRS80)
+ * </pre>
+ * i.e. EPSG:4326 to/from EPSG:3857 and geographic to/from geocentric.
+ *
+ * The formulas mirror PROJ's own (merc spherical asinh(tan(phi)), cart with
+ * Bowring's inverse), so results agree with PROJ well below a millimetre.
+ * Kernels refuse arrays containing coordinates PROJ would reject or wrap
+ * (poles, |lon| &gt; 180, non-finite values, points near the geocentric axis)
+ * and leave them untouched, so the caller can fall back to PROJ.
+ *
+ * An optional VectorKernels class (source set src/java-vector) runs the same
+ * math with the incubating Vector API. It is used only when it was compiled
+ * in and the JVM was started with {@code --add-modules jdk.incubator.vector};
+ * otherwise the scalar loops here are used.
+ */
+final class FastPath {
+
+    enum Op { WEBMERC, CART }
+
+    /** A matched pipeline: operation, ellipsoid and whether lat/lon are swapped on the geographic side. */
+    static final class Kernel {
+        final Op op;
+        final boolean swapAxes;
+        /** True when the pipeline runs projected/geocentric to geographic. */
+        final boolean pipelineInverse;
+        final double a;
+        final double es;
+
+        Kernel(Op op, boolean swapAxes, boolean pipelineInverse, double a, double es) {
+            this.op = op;
+            this.swapAxes = swapAxes;
+            this.pipelineInverse = pipelineInverse;
+            this.a = a;
+            this.es = es;
+        }
+
+        String name() {
+            String geo = swapAxes ? "latlon" : "lonlat";
+            String target = op == Op.WEBMERC ? "webmerc" : "cart";
+            return pipelineInverse ? target + "->" + geo : geo + "->" + target;
+        }
+    }
+
+    static final double DEG_TO_RAD = 0.017453292519943296;
+    static final double RAD_TO_DEG = 1.0 / DEG_TO_RAD;
+    static final double HALF_PI = Math.PI / 2;
+    private static final double POLE_EPS = 1e-10;
+    /** Minimum distance from the Z axis (metres) for the geocentric inverse. */
+    static final double MIN_AXIS_DISTANCE = 100.0;
+
+    private static final Map<String, double[]> ELLIPSOIDS = new HashMap<>();
+    static {
+        ELLIPSOIDS.put("WGS84", new double[]{6378137.0, 298.257223563});
+        ELLIPSOIDS.put("GRS80", new double[]{6378137.0, 298.257222101});
+    }
+
+    /** Vectorized kernels over whole vectors of coordinates; the caller finishes the tail. */
+    interface VectorEngine {
+        int lanes();
+
+        /** @return the number of coordinates processed */
+        int apply(Kernel k, double[] c, int n, boolean toGeographic, int lonIdx, int latIdx);
+    }
+
+    private static final VectorEngine VECTOR = loadVectorEngine();
+
+    private FastPath() {}
+
+    private static VectorEngine loadVectorEngine() {
+        // Checking the boot layer first keeps the class (and the incubator) untouched by default
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) return null;
+        try {
+            VectorEngine engine = (VectorEngine) Class.forName("net.willcohen.proj.VectorKernels")
+                .getDeclaredConstructor().newInstance();
+            return engine.lanes() > 1 ? engine : null;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    // --- Matching ---
+
+    private static final class Step {
+        final boolean inv;
+        final String proj;
+        final Map<String, String> params = new HashMap<>();
+
+        Step(boolean inv, String proj) {
+            this.inv = inv;
+            this.proj = proj;
+        }
+    }
+
+    private static List<Step> parse(String projString) {
+        List<Step> steps = new ArrayList<>();
+        boolean inv = false;
+        String proj = null;
+        Map<String, String> params = new HashMap<>();
+        String[] tokens = (projString.trim() + " +step").split("\\s+");
+        for (String token : tokens) {
+            if (!token.startsWith("+")) return null;
+            String t = token.substring(1);
+            if (t.equals("step")) {
+                if (proj != null) {
+                    Step s = new Step(inv, proj);
+                    s.params.putAll(params);
+                    steps.add(s);
+                }
+                inv = false;
+                proj = null;
+                params.clear();
+            } else if (t.equals("inv")) {
+                inv = true;
+            } else if (t.startsWith("proj=")) {
+                if (t.equals("proj=pipeline")) continue;
+                proj = t.substring(5);
+            } else {
+                int eq = t.indexOf('=');
+                params.put(eq < 0 ? t : t.substring(0, eq), eq < 0 ? "" : t.substring(eq + 1));
+            }
+        }
+        return steps;
+    }
+
+    private static boolean paramsWithin(Step s, Map<String, String> allowed) {
+        for (Map.Entry<String, String> e : s.params.entrySet()) {
+            String want = allowed.get(e.getKey());
+            if (want == null || !want.equals(e.getValue())) return false;
+        }
+        return true;
+    }
+
+    private static boolean isAxisSwap(Step s) {
+        return s.proj.equals("axisswap") && !s.inv
+            && s.params.size() == 1 && "2,1".equals(s.params.get("order"));
+    }
+
+    private static boolean isUnitConvert(Step s, String from, String to) {
+        if (!s.proj.equals("unitconvert") || s.inv) return false;
+        Map<String, String> allowed = new HashMap<>();
+        allowed.put("xy_in", from);
+        allowed.put("xy_out", to);
+        allowed.put("z_in", "m");
+        allowed.put("z_out", "m");
+        return paramsWithin(s, allowed) && from.equals(s.params.get("xy_in")) && to.equals(s.params.get("xy_out"));
+    }
+
+    private static Kernel operation(Step s, boolean swap, boolean pipelineInverse) {
+        if (s.inv != pipelineInverse) return null;
+        double[] ellps = ELLIPSOIDS.get(s.params.get("ellps"));
+        if (ellps == null) return null;
+        double f = 1.0 / ellps[1];
+        double es = 2 * f - f * f;
+        Map<String, String> allowed = new HashMap<>();
+        allowed.put("ellps", s.params.get("ellps"));
+        if (s.proj.equals("webmerc")) {
+            for (String k : new String[]{"lat_0", "lon_0", "x_0", "y_0"}) allowed.put(k, "0");
+            return paramsWithin(s, allowed) ? new Kernel(Op.WEBMERC, swap, pipelineInverse, ellps[0], es) : null;
+        }
+        if (s.proj.equals("cart")) {
+            return paramsWithin(s, allowed) ? new Kernel(Op.CART, swap, pipelineInverse, ellps[0], es) : null;
+        }
+        return null;
+    }
+
+    /**
+     * Match a PROJ pipeline string against the supported forms.
+     * @return the kernel, or null when the pipeline is not supported
+     */
+    static Kernel match(String projString) {
+        if (projString == null) return null;
+        List<Step> steps = parse(projString);
+        if (steps == null || steps.size() < 2 || steps.size() > 3) return null;
+        boolean swap = steps.size() == 3;
+        // Forward: [axisswap] unitconvert(deg->rad) op
+        if (isUnitConvert(steps.get(steps.size() - 2), "deg", "rad")
+                && (!swap || isAxisSwap(steps.get(0)))) {
+            return operation(steps.get(steps.size() - 1), swap, false);
+        }
+        // Inverse: +inv op, unitconvert(rad->deg) [axisswap]
+        if (isUnitConvert(steps.get(1), "rad", "deg")
+                && (!swap || isAxisSwap(steps.get(2)))) {
+            return operation(steps.get(0), swap, true);
+        }
+        return null;
+    }
+
+    // --- Execution ---
+
+    /**
+     * Transform n interleaved [x, y, z, t] coordinates in place.
+     * @param inverse true to run the pipeline backwards (PJ_INV)
+     * @return false, with coords untouched, if any coordinate is outside the fast-path domain
+     */
+    static boolean apply(Kernel k, double[] coords, int n, boolean inverse) {
+        boolean toGeographic = k.pipelineInverse != inverse;
+        int lonIdx = k.swapAxes ? 1 : 0;
+        int latIdx = k.swapAxes ? 0 : 1;
+        if (!inDomain(k, coords, n, toGeographic, lonIdx, latIdx)) return false;
+        int done = 0;
+        if (VECTOR != null) {
+            done = VECTOR.apply(k, coords, n, toGeographic, lonIdx, latIdx);
+        }
+        for (int i = done; i < n; i++) {
+            scalar(k, coords, i * 4, toGeographic, lonIdx, latIdx);
+        }
+        return true;
+    }
+
+    static String engine() {
+        return VECTOR != null ? "vector(" + VECTOR.lanes() + ")" : "scalar";
+    }
+
+    private static boolean inDomain(Kernel k, double[] c, int n, boolean toGeographic, int lonIdx, int latIdx) {
+        for (int i = 0; i < n; i++) {
+            int b = i * 4;
+            if (!toGeographic) {
+                double lon = c[b + lonIdx];
+                double lat = c[b + latIdx];
+                if (!(Math.abs(lon) <= 180.0)) return false;
+                double phi = Math.abs(lat * DEG_TO_RAD);
+                if (k.op == Op.WEBMERC ? !(phi < HALF_PI - POLE_EPS) : !(phi <= HALF_PI)) return false;
+                if (k.op == Op.CART && !Double.isFinite(c[b + 2])) return false;
+            } else if (k.op == Op.WEBMERC) {
+                if (!(Math.abs(c[b] / k.a) <= Math.PI) || !Double.isFinite(c[b + 1])) return false;
+            } else {
+                double p = Math.hypot(c[b], c[b + 1]);
+                if (!(p >= MIN_AXIS_DISTANCE) || !Double.isFinite(c[b + 2])) return false;
+            }
+        }
+        return true;
+    }
+
+    /** Scalar reference for one coordinate at offset b; the vector kernels mirror this. */
+    static void scalar(Kernel k, double[] c, int b, boolean toGeographic, int lonIdx, int latIdx) {
+        if (k.op == Op.WEBMERC) {
+            if (!toGeographic) {
+                double lam = c[b + lonIdx] * DEG_TO_RAD;
+                double t = Math.tan(c[b + latIdx] * DEG_TO_RAD);
+                double at = Math.abs(t);
+                double asinh = Math.log(at + Math.sqrt(at * at + 1.0));
+                c[b] = k.a * lam;
+                c[b + 1] = k.a * (t < 0 ? -asinh : asinh);
+            } else {
+                double lam = c[b] / k.a;
+                double phi = Math.atan(Math.sinh(c[b + 1] / k.a));
+                c[b + lonIdx] = lam * RAD_TO_DEG;
+                c[b + latIdx] = phi * RAD_TO_DEG;
+            }
+        } else {
+            double b2 = k.a * Math.sqrt(1 - k.es);
+            if (!toGeographic) {
+                double lam = c[b + lonIdx] * DEG_TO_RAD;
+                double phi = c[b + latIdx] * DEG_TO_RAD;
+                double h = c[b + 2];
+                double sinphi = Math.sin(phi);
+                double cosphi = Math.cos(phi);
+                double nrc = k.a / Math.sqrt(1 - k.es * sinphi * sinphi);
+                c[b] = (nrc + h) * cosphi * Math.cos(lam);
+                c[b + 1] = (nrc + h) * cosphi * Math.sin(lam);
+                c[b + 2] = (nrc * (1 - k.es) + h) * sinphi;
+            } else {
+                double x = c[b], y = c[b + 1], z = c[b + 2];
+                double e2s = k.es / (1 - k.es);
+                double p = Math.hypot(x, y);
+                double theta = Math.atan2(z * k.a, p * b2);
+                double ct = Math.cos(theta);
+                double st = Math.sin(theta);
+                double phi = Math.atan2(z + e2s * b2 * st * st * st, p - k.es * k.a * ct * ct * ct);
+                double lam = Math.atan2(y, x);
+                double sinphi = Math.sin(phi);
+                double nrc = k.a / Math.sqrt(1 - k.es * sinphi * sinphi);
+                c[b + 2] = p / Math.cos(phi) - nrc;
+                c[b + lonIdx] = lam * RAD_TO_DEG;
+                c[b + latIdx] = phi * RAD_TO_DEG;
+            }
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package net.willcohen.proj;
+
+import clojure.lang.Keyword;
+import clojure.lang.PersistentHashMap;
+
+import java.util.Map;
+
+/**
+ * Geodesics on an ellipsoid of revolution, for batch distance, azimuth and
+ * area computations over coordinate arrays.
+ *
+ * The work is done by PROJ's geodesic routines (geodesic.h): geod_inverse
+ * for each segment or pair, geod_direct, and geod_polygonarea for each ring,
+ * all on one geod_geodesic struct that geod_init fills in on first use. These
+ * are Karney's algorithms (Algorithms for geodesics, J. Geodesy 87, 2013),
+ * accurate to a few nanometres at any separation.
+ *
+ * Coordinates are geographic degrees. {@code latLon} says whether each
+ * coordinate holds latitude first, as in EPSG:4326, or longitude first, as in
+ * OGC:CRS84. Coordinates are interleaved [x, y, z, t]; z and t are ignored.
+ * <pre>
+ * Geodesic g = Geodesic.forObject(ctx, crs);   // or Geodesic.WGS84
+ * double[] distance = new double[n - 1], azi1 = new double[n - 1],
+ *          azi2 = new double[n - 1], cumulative = new double[n];
+ * g.segments(coords, n, true, distance, azi1, azi2, cumulative);
+ * double[] areas = g.ringAreas(coords, n, new int[]{0, 5, 9}, true);
+ * </pre>
+ * Instances are immutable and safe to share between threads.
+ */
+public final class Geodesic {
+    /** The WGS84 ellipsoid. */
+    public static final Geodesic WGS84 = new Geodesic(6378137.0, 1 / 298.257223563);
+
+    private final double a;
+    private final double f;
+    private final double c2;
+    private volatile Object handle;
+
+    /**
+     * @param a semi-major axis in metres
+     * @param f flattening, in [0, 1); 0 for a sphere
+     */
+    public Geodesic(double a, double f) {
+        if (!(a > 0) || Double.isInfinite(a)) throw new IllegalArgumentException("Semi-major axis must be positive: " + a);
+        if (!(f >= 0 && f < 1)) throw new IllegalArgumentException("Flattening must be in [0, 1): " + f);
+        this.a = a;
+        this.f = f;
+        double e2 = f * (2 - f);
+        double b = a * (1 - f);
+        this.c2 = (a * a + b * b * (e2 == 0 ? 1 : atanh(Math.sqrt(e2)) / Math.sqrt(e2))) / 2;
+    }
+
+    /**
+     * The geodesic for the ellipsoid of a CRS, datum or other object PROJ can
+     * take an ellipsoid from (proj_get_ellipsoid).
+     * @param context the PROJ context
+     * @param obj a CRS or other PROJ object
+     * @return the geodesic
+     */
+    public static Geodesic forObject(Object context, Object obj) {
+        Object ellipsoid = PROJ.getEllipsoid(context, obj);
+        if (ellipsoid == null) throw new IllegalArgumentException("Object has no ellipsoid");
+        Map<String, Object> params = PROJ.ellipsoidGetParameters(context, ellipsoid);
+        if (params == null) throw new IllegalArgumentException("Could not read ellipsoid parameters");
+        double semiMajor = ((Number) params.get("semiMajorMetre")).doubleValue();
+        double semiMinor = ((Number) params.get("semiMinorMetre")).doubleValue();
+        double invFlattening = ((Number) params.get("invFlattening")).doubleValue();
+        return new Geodesic(semiMajor, invFlattening != 0 ? 1 / invFlattening : 1 - semiMinor / semiMajor);
+    }
+
+    /** Semi-major axis in metres. */
+    public double semiMajor() {
+        return a;
+    }
+
+    /** Flattening. */
+    public double flattening() {
+        return f;
+    }
+
+    /** Area of the whole ellipsoid in square metres. */
+    public double ellipsoidArea() {
+        return 4 * Math.PI * c2;
+    }
+
+    /** The geod_geodesic struct, created and initialised on first use. */
+    private Object handle() {
+        Object h = handle;
+        if (h == null) {
+            synchronized (this) {
+                h = handle;
+                if (h == null) handle = h = Invokers.GEODESIC.invoke(a, f);
+            }
+        }
+        return h;
+    }
+
+    // --- Batch APIs ---
+
+    /**
+     * Distance and azimuths of each segment of a line, and the cumulative
+     * length at each vertex.
+     * @param coords interleaved [x, y, z, t] geographic coordinates in degrees
+     * @param n number of vertices
+     * @param latLon true when x is latitude (EPSG:4326), false when x is longitude
+     * @param distance n - 1 segment lengths in metres, or null
+     * @param azi1 n - 1 forward azimuths at each segment's start, degrees clockwise from north, or null
+     * @param azi2 n - 1 forward azimuths at each segment's end, or null
+     * @param cumulative n distances from the first vertex, starting with 0, or null
+     * @return the total length in metres
+     */
+    public double segments(double[] coords, int n, boolean latLon,
+                           double[] distance, double[] azi1, double[] azi2, double[] cumulative) {
+        checkCoords(coords, n);
+        if (cumulative != null && n > 0) cumulative[0] = 0;
+        if (n < 2) return 0;
+        double[] d = distance != null || cumulative == null ? distance : new double[n - 1];
+        double total = ((Number) Invokers.GEOD_INVERSE_ARRAY.invoke(
+            handle(), coords, n - 1, 1, latLon, d, azi1, azi2)).doubleValue();
+        if (cumulative != null) {
+            for (int i = 0; i + 1 < n; i++) cumulative[i + 1] = cumulative[i] + d[i];
+        }
+        return total;
+    }
+
+    /**
+     * Distance and azimuths of each segment of a line held in a coordinate array.
+     * @param coordArray coordinate array, as from {@link PROJ#coordArray} or {@link CoordBuffer#handle}
+     * @param n number of vertices
+     * @param latLon true when x is latitude, false when x is longitude
+     * @param distance n - 1 segment lengths in metres, or null
+     * @param azi1 n - 1 azimuths at each segment's start, or null
+     * @param azi2 n - 1 azimuths at each segment's end, or null
+     * @param cumulative n distances from the first vertex, or null
+     * @return the total length in metres
+     */
+    public double segments(Object coordArray, int n, boolean latLon,
+                           double[] distance, double[] azi1, double[] azi2, double[] cumulative) {
+        double[] coords = PROJ.getAll(coordArray, new double[n * 4]);
+        return segments(coords, n, latLon, distance, azi1, azi2, cumulative);
+    }
+
+    /**
+     * Distance between consecutive pairs of points: (0, 1), (2, 3), ...
+     * @param coords interleaved [x, y, z, t] geographic coordinates in degrees
+     * @param pairs number of pairs
+     * @param latLon true when x is latitude, false when x is longitude
+     * @param distance pairs lengths in metres
+     * @param azi1 pairs azimuths at the first point, or null
+     * @param azi2 pairs azimuths at the second point, or null
+     */
+    public void pairs(double[] coords, int pairs, boolean latLon,
+                      double[] distance, double[] azi1, double[] azi2) {
+        checkCoords(coords, 2 * pairs);
+        if (pairs == 0) return;
+        Invokers.GEOD_INVERSE_ARRAY.invoke(handle(), coords, pairs, 2, latLon, distance, azi1, azi2);
+    }
+
+    /**
+     * Area of each ring of a polygon with geodesic edges. Ring k holds the
+     * vertices from ringStarts[k] up to ringStarts[k + 1] (or n for the last
+     * ring); a closing vertex equal to the first is optional. Counter-clockwise
+     * rings have positive area, clockwise rings negative, so an outer ring and
+     * its holes in opposite orientations sum to the polygon's area.
+     * @param coords interleaved [x, y, z, t] geographic coordinates in degrees
+     * @param n number of vertices
+     * @param ringStarts index of each ring's first vertex, ascending
+     * @param latLon true when x is latitude, false when x is longitude
+     * @param areas ringStarts.length signed areas in square metres
+     * @param perimeters ringStarts.length perimeters in metres, or null
+     */
+    public void ringAreas(double[] coords, int n, int[] ringStarts, boolean latLon,
+                          double[] areas, double[] perimeters) {
+        checkCoords(coords, n);
+        for (int k = 0; k < ringStarts.length; k++) {
+            int start = ringStarts[k];
+            int end = k + 1 < ringStarts.length ? ringStarts[k + 1] : n;
+            if (start < 0 || end > n || start > end) {
+                throw new IllegalArgumentException("Ring " + k + " spans vertices " + start + " to " + end + " of " + n);
+            }
+        }
+        if (ringStarts.length == 0) return;
+        Invokers.GEOD_RING_AREAS.invoke(handle(), coords, n, ringStarts, latLon, areas, perimeters);
+    }
+
+    /**
+     * Area of each ring of a polygon; see
+     * {@link #ringAreas(double[], int, int[], boolean, double[], double[])}.
+     * @param coords interleaved [x, y, z, t] geographic coordinates in degrees
+     * @param n number of vertices
+     * @param ringStarts index of each ring's first vertex
+     * @param latLon true when x is latitude, false when x is longitude
+     * @return signed areas in square metres, one per ring
+     */
+    public double[] ringAreas(double[] coords, int n, int[] ringStarts, boolean latLon) {
+        double[] areas = new double[ringStarts.length];
+        ringAreas(coords, n, ringStarts, latLon, areas, null);
+        return areas;
+    }
+
+    /**
+     * Area of each ring of a polygon held in a coordinate array; see
+     * {@link #ringAreas(double[], int, int[], boolean, double[], double[])}.
+     * @param coordArray coordinate array
+     * @param n number of vertices
+     * @param ringStarts index of each ring's first vertex
+     * @param latLon true when x is latitude, false when x is longitude
+     * @return signed areas in square metres, one per ring
+     */
+    public double[] ringAreas(Object coordArray, int n, int[] ringStarts, boolean latLon) {
+        double[] coords = PROJ.getAll(coordArray, new double[n * 4]);
+        return ringAreas(coords, n, ringStarts, latLon);
+    }
+
+    /**
+     * Solve the inverse problem for one pair of points.
+     * @return {distance in metres, azimuth at point 1, azimuth at point 2}, azimuths in degrees
+     */
+    public double[] inverse(double lat1, double lon1, double lat2, double lon2) {
+        double[] s12 = new double[1], azi1 = new double[1], azi2 = new double[1];
+        pairs(new double[]{lat1, lon1, 0, 0, lat2, lon2, 0, 0}, 1, true, s12, azi1, azi2);
+        return new double[]{s12[0], azi1[0], azi2[0]};
+    }
+
+    /**
+     * Solve the direct problem: the point s12 metres from (lat1, lon1) along
+     * azimuth azi1, in degrees clockwise from north.
+     * @return {latitude, longitude, azimuth at the end point}, in degrees
+     */
+    public double[] direct(double lat1, double lon1, double azi1, double s12) {
+        Map<?, ?> r = (Map<?, ?>) Invokers.GEOD_DIRECT.invoke(PersistentHashMap.create(
+            Keyword.intern("g"), handle(), Keyword.intern("lat1"), lat1, Keyword.intern("lon1"), lon1,
+            Keyword.intern("azi1"), azi1, Keyword.intern("s12"), s12));
+        return new double[]{((Number) r.get(Keyword.intern("lat2"))).doubleValue(),
+                            ((Number) r.get(Keyword.intern("lon2"))).doubleValue(),
+                            ((Number) r.get(Keyword.intern("azi2"))).doubleValue()};
+    }
+
+    private static void checkCoords(double[] coords, int n) {
+        if (n < 0 || coords.length < n * 4) {
+            throw new IllegalArgumentException(n + " coordinates requested from an array of " + coords.length / 4);
+        }
+    }
+
+    private static double atanh(double x) {
+        return 0.5 * Math.log((1 + x) / (1 - x));
+    }
+}
@@ -0,0 +1,24 @@
+package net.willcohen.proj;
+
+import clojure.lang.IFn;
+
+/**
+ * Clojure functions used by the handle classes, resolved once on first use.
+ * The holder idiom makes resolution lazy and thread-safe without locking on
+ * every call.
+ */
+final class Invokers {
+    static final IFn TRANS_ARRAY_INVOKER = PROJ.var("trans-array-invoker");
+    static final IFn SET_COORDS_FLAT = PROJ.var("set-coords-flat!");
+    static final IFn GET_COORDS_FLAT = PROJ.var("get-coords-flat!");
+    static final IFn GET_COL = PROJ.var("get-col!");
+    static final IFn ACQUIRE_COORD_ARRAY = PROJ.var("acquire-coord-array");
+    static final IFn RELEASE_COORD_ARRAY = PROJ.var("release-coord-array!");
+    static final IFn DESTROY = PROJ.var("destroy!");
+    static final IFn GEODESIC = PROJ.var("geodesic");
+    static final IFn GEOD_INVERSE_ARRAY = PROJ.var("geod-inverse-array!");
+    static final IFn GEOD_RING_AREAS = PROJ.var("geod-ring-areas!");
+    static final IFn GEOD_DIRECT = PROJ.var("geod-direct");
+
+    private Invokers() {}
+}
@@ -7,10 +7,17 @@ import clojure.lang.IPersistentMap;
 import clojure.lang.PersistentHashMap;
 import clojure.lang.PersistentVector;
 
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.WeakHashMap;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Java API for PROJ coordinate transformation library.
@@ -47,12 +54,26 @@ public class PROJ {
     private static IFn isGraalFn;
     private static IFn isNodeFn;
     private static IFn contextCreateFn;
+    private static IFn clearScratchContextsFn;
+    private static IFn contextTemplateFn;
+    private static IFn contextCloneFn;
+    private static IFn configureContextFn;
+    private static IFn setLogLevelFn;
+    private static IFn configureLogRoutingFn;
+    private static IFn logStatsFn;
+    private static IFn flushLogsFn;
+    private static IFn configureRangeCacheFn;
+    private static IFn rangeCacheStatsFn;
     private static IFn contextPtrFn;
     private static IFn contextDatabasePathFn;
     private static IFn isContextFn;
     private static IFn contextSetDatabasePathFn;
     private static IFn coordArrayFn;
     private static IFn coordToCoordArrayFn;
+    private static IFn acquireCoordArrayFn;
+    private static IFn releaseCoordArrayFn;
+    private static IFn coordPoolStatsFn;
+    private static IFn clearCoordPoolFn;
     private static IFn setCoordsFn;
     private static IFn setCoordFn;
     private static IFn setColFn;
@@ -61,6 +82,7 @@ public class PROJ {
     private static IFn setZcolFn;
     private static IFn setTcolFn;
     private static IFn getCoordsFn;
+    private static IFn getColFn;
     private static IFn errorCodeToStringFn;
 
     // Generated PROJ functions (most commonly used)
@@ -69,6 +91,18 @@ public class PROJ {
     private static IFn createCrsToCrsFromPjFn;
     private static IFn createFromDatabaseFn;
     private static IFn transArrayFn;
+    private static IFn transWkbFn;
+    private static IFn transGeojsonFn;
+    private static IFn transColumnsFn;
+    private static IFn transBoundsFn;
+    private static IFn operationCandidatesFn;
+    private static IFn transArrayByAreaFn;
+    private static IFn transArrayCheckedFn;
+    private static IFn errorCountsFn;
+    private static IFn approxTransformGridFn;
+    private static IFn asProjStringFn;
+    private static IFn getCoordsFlatFn;
+    private static IFn setCoordsFlatFn;
     private static IFn getAuthoritiesFromDatabaseFn;
     private static IFn getCodesFromDatabaseFn;
     private static IFn getCrsInfoListFromDatabaseFn;
@@ -109,6 +143,11 @@ public class PROJ {
         return Clojure.var(NS, name);
     }
 
+    /** Resolve a var of the Clojure API namespace, for the handle classes. */
+    static IFn var(String name) {
+        return getVar(name);
+    }
+
     private static Keyword kw(String name) {
         return Keyword.intern(name);
     }
@@ -192,6 +231,123 @@ public class PROJ {
         return contextCreateFn.invoke();
     }
 
+    /**
+     * Destroy the idle scratch contexts lent to calls made without a context
+     * that return no PROJ object. Calls that create objects, such as
+     * {@link #createCrsToCrs(String, String)}, give each object its own context.
+     * @return the number of contexts destroyed
+     */
+    public static long clearScratchContexts() {
+        if (clearScratchContextsFn == null) clearScratchContextsFn = getVar("clear-scratch-contexts!");
+        return ((Number) clearScratchContextsFn.invoke()).longValue();
+    }
+
+    /**
+     * Create a context configured like {@link #contextCreate()} to serve as a
+     * template for {@link #contextClone(Object)}.
+     * @return opaque context object
+     * @see ContextTemplate
+     */
+    public static Object contextTemplate() {
+        if (contextTemplateFn == null) contextTemplateFn = getVar("context-template");
+        return contextTemplateFn.invoke();
+    }
+
+    /**
+     * Create a context copying another's configuration (database paths, logging,
+     * network callbacks and settings, grid cache) via proj_context_clone,
+     * without registering new callbacks.
+     * @param context the context to copy
+     * @return a new context object
+     */
+    public static Object contextClone(Object context) {
+        if (contextCloneFn == null) contextCloneFn = getVar("context-clone");
+        return contextCloneFn.invoke(context);
+    }
+
+    /**
+     * Set how much PROJ logs for one context. PROJ only formats messages at or
+     * below the context's level; other contexts are unaffected.
+     * @param context the PROJ context
+     * @param level PJ_LOG_* level (0 none, 1 error, 2 debug, 3 trace)
+     */
+    public static void setLogLevel(Object context, int level) {
+        if (setLogLevelFn == null) setLogLevelFn = getVar("set-log-level!");
+        setLogLevelFn.invoke(context, level);
+    }
+
+    /**
+     * Configure how native log messages reach clojure.tools.logging (FFI).
+     * @param async log from a background thread instead of PROJ's calling thread
+     * @param rateLimit messages accepted per second, or 0 for no limit
+     * @param capacity messages buffered before new ones are dropped
+     */
+    public static void configureLogRouting(boolean async, int rateLimit, int capacity) {
+        if (configureLogRoutingFn == null) configureLogRoutingFn = getVar("configure-log-routing!");
+        configureLogRoutingFn.invoke(map(
+            kw("async?"), async,
+            kw("rate-limit"), rateLimit,
+            kw("capacity"), capacity));
+    }
+
+    /**
+     * Native log routing counters (FFI).
+     * @return map with "enqueued", "delivered", "dropped", "rateLimited",
+     *         "pending" and "capacity"
+     */
+    @SuppressWarnings("unchecked")
+    public static Map<String, Object> logStats() {
+        if (logStatsFn == null) logStatsFn = getVar("log-stats");
+        return convertKeywordMap((Map<Keyword, Object>) logStatsFn.invoke());
+    }
+
+    /**
+     * Deliver buffered native log messages on the calling thread.
+     * @return number of messages delivered
+     */
+    public static long flushLogs() {
+        if (flushLogsFn == null) flushLogsFn = getVar("flush-logs!");
+        return ((Number) flushLogsFn.invoke()).longValue();
+    }
+
+    /**
+     * Configure, and turn on, the cache that grid range requests go through.
+     * The cache is off until this is called.
+     * @param directory directory for cached blocks, or null to keep them in memory only
+     * @param maxBytes bound on the directory's size
+     * @param memoryBytes bound on the in-memory tier
+     */
+    public static void configureRangeCache(String directory, long maxBytes, long memoryBytes) {
+        if (configureRangeCacheFn == null) configureRangeCacheFn = getVar("configure-range-cache!");
+        configureRangeCacheFn.invoke(map(
+            kw("directory"), directory,
+            kw("max-bytes"), maxBytes,
+            kw("memory-bytes"), memoryBytes));
+    }
+
+    /**
+     * Range cache counters.
+     * @return map with "memoryHits", "diskHits", "misses", "bytesFromCache",
+     *         "bytesFromNetwork", "stores", "evictions", "memoryBytes",
+     *         "diskBytes", "diskBlocks" and "enabled"
+     */
+    @SuppressWarnings("unchecked")
+    public static Map<String, Object> rangeCacheStats() {
+        if (rangeCacheStatsFn == null) rangeCacheStatsFn = getVar("range-cache-stats");
+        return convertKeywordMap((Map<Keyword, Object>) rangeCacheStatsFn.invoke());
+    }
+
+    /**
+     * Apply configure-context! options, given as alternating option names
+     * (without the leading colon) and values.
+     */
+    static Object configureContext(Object context, Object... kvs) {
+        if (configureContextFn == null) configureContextFn = getVar("configure-context!");
+        Object[] converted = kvs.clone();
+        for (int i = 0; i < converted.length; i += 2) converted[i] = kw((String) converted[i]);
+        return configureContextFn.invoke(context, map(converted));
+    }
+
     /**
      * Get the native pointer from a context.
      * @param context the context object
@@ -265,6 +421,48 @@ public class PROJ {
         return coordArrayFn.invoke(n, dims);
     }
 
+    /**
+     * Lease a coordinate array for n coordinates from the buffer pool.
+     * Buffers come in power-of-two size classes and are reused after
+     * {@link #releaseCoordArray}, so request loops avoid a native allocation
+     * per call. Contents are unspecified; set every coordinate before use.
+     * @param n number of coordinates
+     * @return coordinate array object
+     */
+    public static Object acquireCoordArray(int n) {
+        if (acquireCoordArrayFn == null) acquireCoordArrayFn = getVar("acquire-coord-array");
+        return acquireCoordArrayFn.invoke(n);
+    }
+
+    /**
+     * Return a coordinate array obtained from {@link #acquireCoordArray} to the pool.
+     * The array must not be used afterwards.
+     * @param coordArray the leased coordinate array
+     */
+    public static void releaseCoordArray(Object coordArray) {
+        if (releaseCoordArrayFn == null) releaseCoordArrayFn = getVar("release-coord-array!");
+        releaseCoordArrayFn.invoke(coordArray);
+    }
+
+    /**
+     * Metrics for the coordinate array pool of the current backend.
+     * @return map with "hits", "misses", "releases", "drops",
+     *         "outstandingBuffers", "outstandingBytes" and "pooledBytes"
+     */
+    @SuppressWarnings("unchecked")
+    public static Map<String, Object> coordPoolStats() {
+        if (coordPoolStatsFn == null) coordPoolStatsFn = getVar("coord-pool-stats");
+        return convertKeywordMap((Map<Keyword, Object>) coordPoolStatsFn.invoke());
+    }
+
+    /**
+     * Free every idle pooled coordinate array. Leased arrays are unaffected.
+     */
+    public static void clearCoordPool() {
+        if (clearCoordPoolFn == null) clearCoordPoolFn = getVar("clear-coord-pool!");
+        clearCoordPoolFn.invoke();
+    }
+
     /**
      * Convert a single coordinate to a coordinate array.
      * @param coord the coordinate as double array
@@ -386,6 +584,65 @@ public class PROJ {
         return null;
     }
 
+    /**
+     * Copy the first out.length / 4 coordinates into out as interleaved
+     * [x, y, z, t] doubles, in one pass.
+     * @param coordArray the coordinate array
+     * @param out destination array
+     * @return out
+     */
+    public static double[] getAll(Object coordArray, double[] out) {
+        if (getCoordsFlatFn == null) getCoordsFlatFn = getVar("get-coords-flat!");
+        getCoordsFlatFn.invoke(coordArray, out);
+        return out;
+    }
+
+    /**
+     * Copy the X values of the first out.length coordinates into out.
+     * @param coordArray the coordinate array
+     * @param out destination array
+     * @return out
+     */
+    public static double[] getXcol(Object coordArray, double[] out) {
+        return getCol(coordArray, 0, out);
+    }
+
+    /**
+     * Copy the Y values of the first out.length coordinates into out.
+     * @param coordArray the coordinate array
+     * @param out destination array
+     * @return out
+     */
+    public static double[] getYcol(Object coordArray, double[] out) {
+        return getCol(coordArray, 1, out);
+    }
+
+    /**
+     * Copy the Z values of the first out.length coordinates into out.
+     * @param coordArray the coordinate array
+     * @param out destination array
+     * @return out
+     */
+    public static double[] getZcol(Object coordArray, double[] out) {
+        return getCol(coordArray, 2, out);
+    }
+
+    /**
+     * Copy the T (time) values of the first out.length coordinates into out.
+     * @param coordArray the coordinate array
+     * @param out destination array
+     * @return out
+     */
+    public static double[] getTcol(Object coordArray, double[] out) {
+        return getCol(coordArray, 3, out);
+    }
+
+    private static double[] getCol(Object coordArray, int idx, double[] out) {
+        if (getColFn == null) getColFn = getVar("get-col!");
+        getColFn.invoke(coordArray, idx, out);
+        return out;
+    }
+
     // --- Error handling ---
 
     /**
@@ -418,7 +675,8 @@ public class PROJ {
     }
 
     /**
-     * Create a transformation between two coordinate reference systems using default context.
+     * Create a transformation between two coordinate reference systems. The
+     * transformation gets its own context, cloned from a default template.
      * @param sourceCrs source CRS (e.g., "EPSG:4326")
      * @param targetCrs target CRS (e.g., "EPSG:2249")
      * @return transformation object
@@ -478,7 +736,8 @@ public class PROJ {
     }
 
     /**
-     * Create a PROJ object from a definition string using default context.
+     * Create a PROJ object from a definition string. The object gets its own
+     * context, cloned from a default template.
      * @param definition the definition string
      * @return PJ object
      */
@@ -541,6 +800,32 @@ public class PROJ {
      * @return 0 on success, error code on failure
      */
     public static int transArray(Object transformation, Object coordArray, int n, int direction) {
+        if (tryFastPath(transformation, coordArray, n, direction)) {
+            return 0;
+        }
+        PointCache cache = pointCache;
+        if (cache != null && direction != 0) {
+            return transArrayCached(cache, transformation, coordArray, n, direction,
+                (ca, m) -> transArrayProj(transformation, ca, m, direction));
+        }
+        return transArrayProj(transformation, coordArray, n, direction);
+    }
+
+    /**
+     * Transform coordArray with a fast path if one applies.
+     * @return true if the coordinates were transformed
+     */
+    static boolean tryFastPath(Object transformation, Object coordArray, int n, int direction) {
+        if (!fastPathEnabled || direction == 0 || n < FAST_PATH_MIN_COORDS) return false;
+        FastPath.Kernel kernel = fastPathKernel(transformation);
+        if (kernel == null) return false;
+        double[] coords = getCoordsFlat(coordArray, n);
+        if (!FastPath.apply(kernel, coords, n, direction < 0)) return false;
+        setCoordsFlat(coordArray, coords);
+        return true;
+    }
+
+    private static int transArrayProj(Object transformation, Object coordArray, int n, int direction) {
         if (transArrayFn == null) transArrayFn = getVar("proj-trans-array");
         Object result = transArrayFn.invoke(map(
             kw("p"), transformation,
@@ -551,6 +836,494 @@ public class PROJ {
         return result != null ? ((Number) result).intValue() : 0;
     }
 
+    // --- Point cache ---
+
+    /** A proj_trans_array call on the first n coordinates of a coordinate array. */
+    interface ArrayTransform {
+        int apply(Object coordArray, int n);
+    }
+
+    private static volatile PointCache pointCache;
+
+    /** Ids of transformations seen by the point cache, held like fastPathCache. */
+    private static final Map<Object, Object[]> pointCacheIds =
+        Collections.synchronizedMap(new WeakHashMap<>());
+    private static final AtomicLong nextPointCacheId = new AtomicLong();
+
+    private static long pointCacheId(Object transformation) {
+        Object[] entry = pointCacheIds.get(transformation);
+        if (entry != null && ((WeakReference<?>) entry[0]).get() == transformation) {
+            return (Long) entry[1];
+        }
+        long id = nextPointCacheId.incrementAndGet();
+        pointCacheIds.put(transformation, new Object[]{new WeakReference<>(transformation), id});
+        return id;
+    }
+
+    static PointCache pointCache() {
+        return pointCache;
+    }
+
+    /**
+     * Transform coordArray through the point cache: cached points are filled
+     * in, and only the others are packed into a pooled array for PROJ.
+     */
+    static int transArrayCached(PointCache cache, Object transformation, Object coordArray,
+                                int n, int direction, ArrayTransform proj) {
+        long tag = PointCache.tag(pointCacheId(transformation), direction);
+        double[] input = getCoordsFlat(coordArray, n);
+        double[] coords = input.clone();
+        int[] missing = new int[n];
+        int m = 0;
+        for (int i = 0; i < n; i++) {
+            if (!cache.lookup(tag, coords, i)) missing[m++] = i;
+        }
+        if (m == 0) {
+            setCoordsFlat(coordArray, coords);
+            return 0;
+        }
+        if (m == n) {
+            int rc = proj.apply(coordArray, n);
+            double[] out = getCoordsFlat(coordArray, n);
+            for (int i = 0; i < n; i++) cache.insert(tag, input, i, out, i);
+            return rc;
+        }
+        double[] packed = new double[m * 4];
+        for (int k = 0; k < m; k++) {
+            System.arraycopy(input, missing[k] * 4, packed, k * 4, 4);
+        }
+        Object scratch = acquireCoordArray(m);
+        int rc;
+        try {
+            setCoordsFlat(scratch, packed);
+            rc = proj.apply(scratch, m);
+            getAll(scratch, packed);
+        } finally {
+            releaseCoordArray(scratch);
+        }
+        for (int k = 0; k < m; k++) {
+            cache.insert(tag, input, missing[k], packed, k);
+            System.arraycopy(packed, k * 4, coords, missing[k] * 4, 4);
+        }
+        setCoordsFlat(coordArray, coords);
+        return rc;
+    }
+
+    /**
+     * Memoize point transforms in {@link #transArray} and {@link Transformer}.
+     * Each point is looked up by transformation, direction and its input
+     * rounded to a multiple of quantum; only points not found go to PROJ.
+     * Points within one quantum of each other share the first one's result, so
+     * pick a quantum below the precision the inputs are meaningful to (1e-7
+     * degrees is about 1 cm). Replaces any previous cache. Entries are held
+     * off-heap, 80 bytes each.
+     * @param quantum rounding step of input coordinates, in source CRS units
+     * @param capacity entries, rounded up to a power of two
+     */
+    public static void configurePointCache(double quantum, int capacity) {
+        pointCache = new PointCache(quantum, capacity);
+    }
+
+    /**
+     * Stop memoizing point transforms and drop the cache.
+     */
+    public static void disablePointCache() {
+        pointCache = null;
+    }
+
+    /**
+     * Empty the point cache, keeping its settings and counters.
+     */
+    public static void clearPointCache() {
+        PointCache cache = pointCache;
+        if (cache != null) cache.clear();
+    }
+
+    /**
+     * Point cache counters.
+     * @return map with "hits", "misses", "hitRate", "inserts", "evictions",
+     *         "entries", "capacity", "quantum" and "offHeapBytes", or an
+     *         empty map when no cache is configured
+     */
+    public static Map<String, Object> pointCacheStats() {
+        PointCache cache = pointCache;
+        return cache == null ? new HashMap<>() : cache.stats();
+    }
+
+    // --- Fast paths ---
+
+    /** Arrays smaller than this always go through PROJ. */
+    private static final int FAST_PATH_MIN_COORDS = 16;
+
+    private static volatile boolean fastPathEnabled =
+        !"false".equals(System.getProperty("net.willcohen.proj.fastpath"));
+
+    /**
+     * Matched kernels per transformation. Values hold a weak reference to the
+     * key as well, since backends may compare pointers by address and a freed
+     * address can be reused by an unrelated transformation.
+     */
+    private static final Map<Object, Object[]> fastPathCache =
+        Collections.synchronizedMap(new WeakHashMap<>());
+
+    private static FastPath.Kernel fastPathKernel(Object transformation) {
+        Object[] entry = fastPathCache.get(transformation);
+        if (entry != null && ((WeakReference<?>) entry[0]).get() == transformation) {
+            return (FastPath.Kernel) entry[1];
+        }
+        FastPath.Kernel kernel = null;
+        try {
+            if (asProjStringFn == null) asProjStringFn = getVar("proj-as-proj-string");
+            Object s = asProjStringFn.invoke(map(kw("pj"), transformation, kw("type"), 0));
+            kernel = FastPath.match(s instanceof String ? (String) s : null);
+        } catch (RuntimeException e) {
+            // Not exportable as a PROJ string; always use PROJ
+        }
+        fastPathCache.put(transformation, new Object[]{new WeakReference<>(transformation), kernel});
+        return kernel;
+    }
+
+    private static double[] getCoordsFlat(Object coordArray, int n) {
+        return getAll(coordArray, new double[n * 4]);
+    }
+
+    private static void setCoordsFlat(Object coordArray, double[] coords) {
+        if (setCoordsFlatFn == null) setCoordsFlatFn = getVar("set-coords-flat!");
+        setCoordsFlatFn.invoke(coordArray, coords);
+    }
+
+    /**
+     * Enable or disable the pure-Java fast paths used by {@link #transArray}.
+     * Also settable at startup with {@code -Dnet.willcohen.proj.fastpath=false}.
+     * @param enabled true to allow fast paths
+     */
+    public static void setFastPathEnabled(boolean enabled) {
+        fastPathEnabled = enabled;
+    }
+
+    /**
+     * Whether {@link #transArray} may use the pure-Java fast paths.
+     * @return true if fast paths are enabled
+     */
+    public static boolean isFastPathEnabled() {
+        return fastPathEnabled;
+    }
+
+    /**
+     * Describe the fast path {@link #transArray} uses for a transformation.
+     * Supported pipelines are EPSG:4326 to/from EPSG:3857 and geographic
+     * to/from geocentric on WGS84/GRS80, in either axis order.
+     * @param transformation the transformation object
+     * @return e.g. "latlon-&gt;webmerc", or null if the transformation always uses PROJ
+     */
+    public static String fastPathFor(Object transformation) {
+        FastPath.Kernel kernel = fastPathKernel(transformation);
+        return kernel == null ? null : kernel.name();
+    }
+
+    /**
+     * The engine running fast-path kernels.
+     * @return "vector(N)" when the optional vector kernels are on the classpath
+     *         and the JVM runs with --add-modules jdk.incubator.vector, with N
+     *         double lanes; otherwise "scalar"
+     */
+    public static String fastPathEngine() {
+        return FastPath.engine();
+    }
+
+    /**
+     * Verification harness for the fast paths: transform coords with both the
+     * fast path and PROJ and report the largest absolute difference in x, y or z.
+     * Units are those of the output CRS (metres or degrees).
+     * @param transformation the transformation object
+     * @param coords interleaved [x, y, z, t] input coordinates, left untouched
+     * @param direction transformation direction (1=forward, -1=inverse)
+     * @return the maximum deviation, or NaN if no fast path applies to this
+     *         transformation or these coordinates
+     */
+    public static double verifyFastPath(Object transformation, double[] coords, int direction) {
+        double[] d = verifyFastPathOrdinates(transformation, coords, direction);
+        return d == null ? Double.NaN : Math.max(d[0], Math.max(d[1], d[2]));
+    }
+
+    /**
+     * Like {@link #verifyFastPath}, but per output ordinate, so angular and
+     * linear outputs (e.g. lat, lon and height) can be held to their own
+     * tolerances.
+     * @param transformation the transformation object
+     * @param coords interleaved [x, y, z, t] input coordinates, left untouched
+     * @param direction transformation direction (1=forward, -1=inverse)
+     * @return {max |dx|, max |dy|, max |dz|} in output units, or null if no
+     *         fast path applies to this transformation or these coordinates
+     */
+    public static double[] verifyFastPathOrdinates(Object transformation, double[] coords, int direction) {
+        FastPath.Kernel kernel = fastPathKernel(transformation);
+        int n = coords.length / 4;
+        double[] fast = Arrays.copyOf(coords, n * 4);
+        if (kernel == null || n == 0 || !FastPath.apply(kernel, fast, n, direction < 0)) {
+            return null;
+        }
+        Object ca = coordArray(n);
+        setCoordsFlat(ca, Arrays.copyOf(coords, n * 4));
+        transArrayProj(transformation, ca, n, direction);
+        double[] exact = getCoordsFlat(ca, n);
+        double[] worst = new double[3];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < 3; j++) {
+                double d = Math.abs(fast[i * 4 + j] - exact[i * 4 + j]);
+                if (!(d <= worst[j])) worst[j] = d;
+            }
+        }
+        return worst;
+    }
+
+    /**
+     * Transform a batch of WKB geometries with a single proj_trans_array call.
+     * All vertices are packed into one coordinate array; results are written to
+     * new buffers and the inputs are left untouched. Supports ISO WKB and EWKB,
+     * including Z/M variants, multi-geometries and collections.
+     * @param transformation the transformation object
+     * @param wkbs WKB geometries
+     * @return transformed WKB geometries, in input order
+     */
+    public static List<ByteBuffer> transWkb(Object transformation, List<ByteBuffer> wkbs) {
+        return transWkb(transformation, wkbs, PJ_FWD);
+    }
+
+    /**
+     * Transform a batch of WKB geometries with specified direction.
+     * @param transformation the transformation object
+     * @param wkbs WKB geometries
+     * @param direction transformation direction (1=forward, -1=inverse, 0=identity)
+     * @return transformed WKB geometries, in input order
+     */
+    @SuppressWarnings("unchecked")
+    public static List<ByteBuffer> transWkb(Object transformation, List<ByteBuffer> wkbs, int direction) {
+        if (transWkbFn == null) transWkbFn = getVar("trans-wkb");
+        return (List<ByteBuffer>) transWkbFn.invoke(transformation, wkbs, direction);
+    }
+
+    /**
+     * Transform a batch of GeoJSON objects (geometries, Features or FeatureCollections
+     * as nested Maps and Lists) with a single proj_trans_array call.
+     * @param transformation the transformation object
+     * @param geoms GeoJSON objects
+     * @return rebuilt GeoJSON objects with transformed positions, in input order
+     */
+    public static List<Object> transGeojson(Object transformation, List<?> geoms) {
+        return transGeojson(transformation, geoms, PJ_FWD);
+    }
+
+    /**
+     * Transform a batch of GeoJSON objects with specified direction.
+     * @param transformation the transformation object
+     * @param geoms GeoJSON objects
+     * @param direction transformation direction (1=forward, -1=inverse, 0=identity)
+     * @return rebuilt GeoJSON objects with transformed positions, in input order
+     */
+    @SuppressWarnings("unchecked")
+    public static List<Object> transGeojson(Object transformation, List<?> geoms, int direction) {
+        if (transGeojsonFn == null) transGeojsonFn = getVar("trans-geojson");
+        return (List<Object>) transGeojsonFn.invoke(transformation, geoms, direction);
+    }
+
+    /**
+     * Transform coordinates held in separate column arrays, in place, with a
+     * single proj_trans_generic call. No interleaved PJ_COORD array is built.
+     * @param transformation the transformation object
+     * @param x x values (modified in place)
+     * @param y y values (modified in place)
+     * @param z z values (modified in place), or null
+     * @param t t values (modified in place), or null
+     * @return number of coordinates transformed
+     */
+    public static long transColumns(Object transformation, double[] x, double[] y, double[] z, double[] t) {
+        return transColumns(transformation, x, y, z, t, PJ_FWD);
+    }
+
+    /**
+     * Transform coordinates held in separate column arrays with specified direction.
+     * @param transformation the transformation object
+     * @param x x values (modified in place)
+     * @param y y values (modified in place)
+     * @param z z values (modified in place), or null
+     * @param t t values (modified in place), or null
+     * @param direction transformation direction (1=forward, -1=inverse, 0=identity)
+     * @return number of coordinates transformed
+     */
+    public static long transColumns(Object transformation, double[] x, double[] y, double[] z, double[] t, int direction) {
+        if (transColumnsFn == null) transColumnsFn = getVar("trans-columns!");
+        Object result = transColumnsFn.invoke(transformation,
+            map(kw("x"), x, kw("y"), y, kw("z"), z, kw("t"), t),
+            map(kw("direction"), direction));
+        return result != null ? ((Number) result).longValue() : 0L;
+    }
+
+    /**
+     * Transform coordinates held in separate DoubleBuffer columns, in place.
+     * Direct buffers in native byte order (e.g.
+     * {@code ByteBuffer.allocateDirect(8 * n).order(ByteOrder.nativeOrder()).asDoubleBuffer()})
+     * are handed to PROJ without any copy on the native backend; heap buffers
+     * are copied once in and once out. Values are read from index 0 to the limit.
+     * @param transformation the transformation object
+     * @param x x values (modified in place)
+     * @param y y values (modified in place)
+     * @param z z values (modified in place), or null
+     * @param t t values (modified in place), or null
+     * @param direction transformation direction (1=forward, -1=inverse, 0=identity)
+     * @return number of coordinates transformed
+     */
+    public static long transColumns(Object transformation, DoubleBuffer x, DoubleBuffer y, DoubleBuffer z, DoubleBuffer t, int direction) {
+        if (transColumnsFn == null) transColumnsFn = getVar("trans-columns!");
+        Object result = transColumnsFn.invoke(transformation,
+            map(kw("x"), x, kw("y"), y, kw("z"), z, kw("t"), t),
+            map(kw("direction"), direction));
+        return result != null ? ((Number) result).longValue() : 0L;
+    }
+
+    /**
+     * Reproject a batch of bounding boxes with proj_trans_bounds.
+     * Boxes are in each CRS's axis order. For a geographic target, a box whose
+     * longitude minimum exceeds its maximum crosses the antimeridian: values 0
+     * and 2 for a lon-first target, 1 and 3 for a lat-first one such as EPSG:4326.
+     * @param transformation the transformation object
+     * @param bboxes flat array of boxes [min1, min2, max1, max2, ...] in source axis order
+     * @param densifyPts number of points added along each edge (21 is PROJ's recommendation)
+     * @return flat array of transformed boxes; failed boxes are NaN
+     */
+    public static double[] transBounds(Object transformation, double[] bboxes, int densifyPts) {
+        return transBounds(transformation, bboxes, densifyPts, PJ_FWD);
+    }
+
+    /**
+     * Reproject a batch of bounding boxes with specified direction.
+     * @param transformation the transformation object
+     * @param bboxes flat array of boxes [min1, min2, max1, max2, ...] in source axis order
+     * @param densifyPts number of points added along each edge
+     * @param direction transformation direction (1=forward, -1=inverse)
+     * @return flat array of transformed boxes; failed boxes are NaN
+     */
+    public static double[] transBounds(Object transformation, double[] bboxes, int densifyPts, int direction) {
+        if (transBoundsFn == null) transBoundsFn = getVar("trans-bounds");
+        return (double[]) transBoundsFn.invoke(transformation, bboxes,
+            map(kw("densify-pts"), densifyPts, kw("direction"), direction));
+    }
+
+    /**
+     * Build the candidate operations between two CRSs once, with each
+     * candidate's area of use reprojected into both CRSs, for
+     * {@link #transArrayByArea(Object, Object, int, int)}.
+     * @param context the PROJ context, or null for the thread's default context
+     * @param sourceCrs source CRS (e.g., "EPSG:4230")
+     * @param targetCrs target CRS (e.g., "EPSG:4326")
+     * @return opaque candidates object
+     */
+    public static Object operationCandidates(Object context, String sourceCrs, String targetCrs) {
+        if (operationCandidatesFn == null) operationCandidatesFn = getVar("operation-candidates");
+        return operationCandidatesFn.invoke(map(
+            kw("context"), context,
+            kw("source-crs"), sourceCrs,
+            kw("target-crs"), targetCrs));
+    }
+
+    /**
+     * Names of the candidate operations, indexed like the result of
+     * {@link #transArrayByArea(Object, Object, int, int)}.
+     * @param candidates result of operationCandidates
+     * @return operation names in preference order
+     */
+    @SuppressWarnings("unchecked")
+    public static List<String> candidateNames(Object candidates) {
+        return (List<String>) ((IPersistentMap) candidates).valAt(kw("names"));
+    }
+
+    /**
+     * Transform coordinates in place, choosing per point the first usable
+     * candidate whose area of use contains it, with one proj_trans_array call
+     * per candidate used.
+     * @param candidates result of operationCandidates
+     * @param coordArray the coordinate array
+     * @param n number of coordinates
+     * @param direction PJ_FWD, or PJ_INV for coordinates in the target CRS
+     * @return chosen candidate index per point, -1 where none applies (set to HUGE_VAL)
+     */
+    public static int[] transArrayByArea(Object candidates, Object coordArray, int n, int direction) {
+        if (transArrayByAreaFn == null) transArrayByAreaFn = getVar("trans-array-by-area!");
+        return (int[]) transArrayByAreaFn.invoke(candidates, coordArray, n, direction);
+    }
+
+    /**
+     * Transform coordinates in place in one pass and report the error code of
+     * each point. A point failed if any ordinate comes back NaN or HUGE_VAL;
+     * it takes the code PROJ returns for its chunk, and is transformed again
+     * alone only when the failures in that chunk had different codes.
+     * @param transformation the transformation object
+     * @param coordArray the coordinate array
+     * @param n number of coordinates
+     * @param direction transformation direction (1=forward, -1=inverse)
+     * @return error code per point, 0 where the point was transformed
+     */
+    public static int[] transArrayChecked(Object transformation, Object coordArray, int n, int direction) {
+        if (transArrayCheckedFn == null) transArrayCheckedFn = getVar("trans-array-checked!");
+        Object result = transArrayCheckedFn.invoke(transformation, coordArray, n,
+            map(kw("direction"), direction));
+        return (int[]) ((IPersistentMap) result).valAt(kw("status"));
+    }
+
+    /**
+     * Like {@link #transArrayChecked(Object, Object, int, int)}, but returns a
+     * validity bitmap: bit (i % 64) of word (i / 64) is set when point i was
+     * transformed.
+     * @param transformation the transformation object
+     * @param coordArray the coordinate array
+     * @param n number of coordinates
+     * @param direction transformation direction (1=forward, -1=inverse)
+     * @return validity bitmap of (n + 63) / 64 words
+     */
+    public static long[] transArrayValidity(Object transformation, Object coordArray, int n, int direction) {
+        if (transArrayCheckedFn == null) transArrayCheckedFn = getVar("trans-array-checked!");
+        Object result = transArrayCheckedFn.invoke(transformation, coordArray, n,
+            map(kw("direction"), direction, kw("status"), kw("bitmap")));
+        return (long[]) ((IPersistentMap) result).valAt(kw("status"));
+    }
+
+    /**
+     * Summarize per-point error codes from
+     * {@link #transArrayChecked(Object, Object, int, int)}.
+     * @param codes error code per point
+     * @return map with "counts" (code to number of points), "descriptions"
+     *         (code to PROJ error name) and "classes" ("invalidOp",
+     *         "coordTransfm", "other" to number of points)
+     */
+    @SuppressWarnings("unchecked")
+    public static Map<String, Object> errorCounts(int[] codes) {
+        if (errorCountsFn == null) errorCountsFn = getVar("error-counts");
+        Map<String, Object> result = convertKeywordMap((Map<Keyword, Object>) errorCountsFn.invoke(codes));
+        result.put("classes", convertKeywordMap((Map<Keyword, Object>) result.get("classes")));
+        return result;
+    }
+
+    /**
+     * Build a dense destination-to-source coordinate map for a raster, using exact
+     * transforms only on an adaptively refined control grid and bilinear
+     * interpolation elsewhere.
+     * @param transformation transformation from destination CRS to source CRS
+     * @param width destination raster width in pixels
+     * @param height destination raster height in pixels
+     * @param geotransform GDAL-style geotransform of the destination raster
+     * @param maxError largest tolerated interpolation error, in source CRS units
+     * @return map with "x" and "y" (double[] source coordinates, row-major),
+     *         "maxError" (achieved error) and "exactCount"
+     */
+    @SuppressWarnings("unchecked")
+    public static Map<String, Object> approxTransformGrid(Object transformation, int width, int height,
+                                                          double[] geotransform, double maxError) {
+        if (approxTransformGridFn == null) approxTransformGridFn = getVar("approx-transform-grid");
+        Object result = approxTransformGridFn.invoke(transformation, width, height, geotransform,
+            map(kw("max-error"), maxError));
+        return convertKeywordMap((Map<Keyword, Object>) result);
+    }
+
     /**
      * Get list of available authorities from the PROJ database.
      * @param context the PROJ context
@@ -815,21 +1588,23 @@ public class PROJ {
     // --- Cleanup (usually not needed due to automatic resource tracking) ---
 
     /**
-     * Destroy a PROJ context. Usually not needed as resources are automatically tracked.
+     * Destroy a PROJ context now instead of at garbage collection. Safe to call
+     * more than once. Destroy objects created from the context first.
      * @param context the context to destroy
      */
     public static void contextDestroy(Object context) {
-        if (contextDestroyFn == null) contextDestroyFn = getVar("proj-context-destroy");
-        contextDestroyFn.invoke(map(kw("context"), context));
+        if (contextDestroyFn == null) contextDestroyFn = getVar("destroy!");
+        contextDestroyFn.invoke(context);
     }
 
     /**
-     * Destroy a PROJ object. Usually not needed as resources are automatically tracked.
+     * Destroy a PROJ object now instead of at garbage collection. Safe to call
+     * more than once.
      * @param pj the PROJ object to destroy
      */
     public static void destroy(Object pj) {
-        if (destroyFn == null) destroyFn = getVar("proj-destroy");
-        destroyFn.invoke(map(kw("pj"), pj));
+        if (destroyFn == null) destroyFn = getVar("destroy!");
+        destroyFn.invoke(pj);
     }
 
     // --- Direction constants ---
@@ -841,6 +1616,17 @@ public class PROJ {
     /** Inverse transformation direction */
     public static final int PJ_INV = -1;
 
+    // --- Log level constants ---
+
+    /** No logging */
+    public static final int PJ_LOG_NONE = 0;
+    /** Errors only (the default) */
+    public static final int PJ_LOG_ERROR = 1;
+    /** Debug messages */
+    public static final int PJ_LOG_DEBUG = 2;
+    /** Trace messages */
+    public static final int PJ_LOG_TRACE = 3;
+
     // --- Category constants ---
 
     /** Ellipsoid category */
@@ -0,0 +1,219 @@
+package net.willcohen.proj;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Memoized point transforms keyed by transformation and quantized input.
+ *
+ * Inputs are rounded to multiples of a quantum (in the source CRS's units), so
+ * points closer than the quantum share one cached result: the output for the
+ * first of them that was transformed. Entries live off-heap in direct
+ * buffers, one per segment with its own lock, as fixed 80-byte records:
+ * <pre>
+ * tag (transformation id, direction) | qx qy qz qt | x y z t | reference bit
+ * </pre>
+ * A key hashes to a window of {@link #WINDOW} slots in its segment (open
+ * addressing with linear probing). Slots are never emptied, only replaced, so
+ * a lookup stops at the first empty slot. When the window is full the insert
+ * runs CLOCK over it: slots used since the hand last passed get a second
+ * chance, the first without one is replaced.
+ *
+ * Only finite inputs and outputs are cached; a point PROJ fails on is sent to
+ * PROJ again next time.
+ */
+final class PointCache {
+    static final int WINDOW = 8;
+    private static final int RECORD = 80;
+    private static final int SEGMENTS = 16;
+
+    private final double quantum;
+    private final double inverse;
+    private final int segmentSlots;
+    private final ByteBuffer[] segments = new ByteBuffer[SEGMENTS];
+    private final int[] hands = new int[SEGMENTS];
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder inserts = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param quantum input coordinates are rounded to multiples of this
+     * @param capacity entries, rounded up to a power of two of at least 16 * WINDOW
+     */
+    PointCache(double quantum, int capacity) {
+        if (!(quantum > 0) || Double.isInfinite(quantum)) {
+            throw new IllegalArgumentException("quantum must be positive and finite: " + quantum);
+        }
+        this.quantum = quantum;
+        this.inverse = 1.0 / quantum;
+        int total = Integer.highestOneBit(Math.max(SEGMENTS * WINDOW, capacity - 1) * 2 - 1);
+        if (total < 0 || (long) total * RECORD / SEGMENTS > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("capacity too large: " + capacity);
+        }
+        this.segmentSlots = total / SEGMENTS;
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = ByteBuffer.allocateDirect(segmentSlots * RECORD).order(ByteOrder.nativeOrder());
+        }
+    }
+
+    double quantum() {
+        return quantum;
+    }
+
+    int capacity() {
+        return segmentSlots * SEGMENTS;
+    }
+
+    /** Quantized ordinate, or Long.MIN_VALUE when v cannot be cached. */
+    private long quantize(double v) {
+        double q = Math.floor(v * inverse + 0.5);
+        return (q > -4.0e18 && q < 4.0e18) ? (long) q : Long.MIN_VALUE;
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 33);
+    }
+
+    /**
+     * Look up point i of coords; on a hit, overwrite it with the cached result.
+     * @param tag nonzero transformation id and direction, see {@link #tag}
+     * @return true on a hit
+     */
+    boolean lookup(long tag, double[] coords, int i) {
+        int o = i * 4;
+        long qx = quantize(coords[o]), qy = quantize(coords[o + 1]);
+        long qz = quantize(coords[o + 2]), qt = quantize(coords[o + 3]);
+        if (qx == Long.MIN_VALUE || qy == Long.MIN_VALUE || qz == Long.MIN_VALUE || qt == Long.MIN_VALUE) {
+            misses.increment();
+            return false;
+        }
+        long h = mix(tag * 31 + mix(qx * 31 + mix(qy * 31 + mix(qz * 31 + qt))));
+        int seg = (int) (h >>> 60);
+        ByteBuffer b = segments[seg];
+        int mask = segmentSlots - 1;
+        int start = (int) h & mask;
+        synchronized (b) {
+            for (int k = 0; k < WINDOW; k++) {
+                int base = ((start + k) & mask) * RECORD;
+                long t = b.getLong(base);
+                if (t == 0) break;
+                if (t == tag && b.getLong(base + 8) == qx && b.getLong(base + 16) == qy
+                        && b.getLong(base + 24) == qz && b.getLong(base + 32) == qt) {
+                    coords[o] = b.getDouble(base + 40);
+                    coords[o + 1] = b.getDouble(base + 48);
+                    coords[o + 2] = b.getDouble(base + 56);
+                    coords[o + 3] = b.getDouble(base + 64);
+                    b.putLong(base + 72, 1L);
+                    hits.increment();
+                    return true;
+                }
+            }
+        }
+        misses.increment();
+        return false;
+    }
+
+    /**
+     * Remember that point i of input transformed to point j of output.
+     * Skipped when either is not finite.
+     */
+    void insert(long tag, double[] input, int i, double[] output, int j) {
+        int o = i * 4, p = j * 4;
+        for (int k = 0; k < 4; k++) {
+            if (!Double.isFinite(output[p + k])) return;
+        }
+        long qx = quantize(input[o]), qy = quantize(input[o + 1]);
+        long qz = quantize(input[o + 2]), qt = quantize(input[o + 3]);
+        if (qx == Long.MIN_VALUE || qy == Long.MIN_VALUE || qz == Long.MIN_VALUE || qt == Long.MIN_VALUE) {
+            return;
+        }
+        long h = mix(tag * 31 + mix(qx * 31 + mix(qy * 31 + mix(qz * 31 + qt))));
+        int seg = (int) (h >>> 60);
+        ByteBuffer b = segments[seg];
+        int mask = segmentSlots - 1;
+        int start = (int) h & mask;
+        synchronized (b) {
+            int slot = -1;
+            for (int k = 0; k < WINDOW && slot < 0; k++) {
+                int s = (start + k) & mask;
+                long t = b.getLong(s * RECORD);
+                if (t == 0 || (t == tag && b.getLong(s * RECORD + 8) == qx && b.getLong(s * RECORD + 16) == qy
+                        && b.getLong(s * RECORD + 24) == qz && b.getLong(s * RECORD + 32) == qt)) {
+                    slot = s;
+                }
+            }
+            if (slot < 0) {
+                // CLOCK over the window, starting where the segment's hand last stopped
+                int k = hands[seg];
+                while (true) {
+                    int s = (start + (k % WINDOW)) & mask;
+                    if (b.getLong(s * RECORD + 72) == 0) {
+                        slot = s;
+                        break;
+                    }
+                    b.putLong(s * RECORD + 72, 0L);
+                    k++;
+                }
+                hands[seg] = (k + 1) % WINDOW;
+                evictions.increment();
+            }
+            int base = slot * RECORD;
+            b.putLong(base, tag);
+            b.putLong(base + 8, qx);
+            b.putLong(base + 16, qy);
+            b.putLong(base + 24, qz);
+            b.putLong(base + 32, qt);
+            b.putDouble(base + 40, output[p]);
+            b.putDouble(base + 48, output[p + 1]);
+            b.putDouble(base + 56, output[p + 2]);
+            b.putDouble(base + 64, output[p + 3]);
+            b.putLong(base + 72, 0L);
+        }
+        inserts.increment();
+    }
+
+    /** Tag for a transformation id and direction; never 0. */
+    static long tag(long id, int direction) {
+        return (id << 2) | (direction < 0 ? 1 : 2);
+    }
+
+    void clear() {
+        for (ByteBuffer b : segments) {
+            synchronized (b) {
+                for (int s = 0; s < segmentSlots; s++) b.putLong(s * RECORD, 0L);
+            }
+        }
+    }
+
+    Map<String, Object> stats() {
+        long entries = 0;
+        for (ByteBuffer b : segments) {
+            synchronized (b) {
+                for (int s = 0; s < segmentSlots; s++) {
+                    if (b.getLong(s * RECORD) != 0) entries++;
+                }
+            }
+        }
+        long h = hits.sum(), m = misses.sum();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("hits", h);
+        stats.put("misses", m);
+        stats.put("hitRate", h + m == 0 ? 0.0 : (double) h / (h + m));
+        stats.put("inserts", inserts.sum());
+        stats.put("evictions", evictions.sum());
+        stats.put("entries", entries);
+        stats.put("capacity", (long) capacity());
+        stats.put("quantum", quantum);
+        stats.put("offHeapBytes", (long) capacity() * RECORD);
+        return stats;
+    }
+}
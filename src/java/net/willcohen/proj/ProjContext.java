@@ -0,0 +1,124 @@
+package net.willcohen.proj;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A PROJ context that frees its native memory in {@link #close()} instead of
+ * waiting for garbage collection.
+ *
+ * <pre>
+ * try (ProjContext ctx = ProjContext.create();
+ *      Transformer t = ctx.createCrsToCrs("EPSG:4326", "EPSG:2249");
+ *      CoordBuffer coords = CoordBuffer.of(new double[]{42.36, -71.06, 0, 0})) {
+ *     t.transform(coords);
+ * }
+ * </pre>
+ *
+ * Objects created from a context must be closed before the context;
+ * try-with-resources does this when they are declared after it.
+ */
+public final class ProjContext implements AutoCloseable {
+    private final Object context;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private ProjContext(Object context) {
+        this.context = context;
+    }
+
+    /**
+     * Create a context with the bundled database and network access configured.
+     * @return a new context
+     */
+    public static ProjContext create() {
+        return new ProjContext(PROJ.contextCreate());
+    }
+
+    /**
+     * Take ownership of a context from {@link PROJ#contextCreate()}.
+     * {@link #close()} destroys it.
+     * @param context the context object
+     * @return the wrapped context
+     */
+    public static ProjContext wrap(Object context) {
+        if (!PROJ.isContext(context)) {
+            throw new IllegalArgumentException("Not a PROJ context: " + context);
+        }
+        return new ProjContext(context);
+    }
+
+    /**
+     * The underlying context object, for the static {@link PROJ} methods.
+     * @return the context object
+     */
+    public Object handle() {
+        if (closed.get()) throw new IllegalStateException("ProjContext is closed");
+        return context;
+    }
+
+    /**
+     * Create a transformation between two CRS identifiers.
+     * @param sourceCrs source CRS (e.g., "EPSG:4326")
+     * @param targetCrs target CRS (e.g., "EPSG:2249")
+     * @return the transformer
+     */
+    public Transformer createCrsToCrs(String sourceCrs, String targetCrs) {
+        return new Transformer(PROJ.createCrsToCrs(handle(), sourceCrs, targetCrs), this);
+    }
+
+    /**
+     * Create a transformation between two CRS objects.
+     * @param sourceCrs source CRS
+     * @param targetCrs target CRS
+     * @return the transformer
+     */
+    public Transformer createCrsToCrs(Crs sourceCrs, Crs targetCrs) {
+        return new Transformer(PROJ.createCrsToCrsFromPj(handle(), sourceCrs.handle(), targetCrs.handle()), this);
+    }
+
+    /**
+     * Create a CRS from a definition string (PROJ string, WKT, or "AUTH:CODE").
+     * @param definition the definition
+     * @return the CRS
+     */
+    public Crs createCrs(String definition) {
+        return new Crs(PROJ.create(handle(), definition), this);
+    }
+
+    /**
+     * Create a CRS from the database by authority and code.
+     * @param authName authority name (e.g., "EPSG")
+     * @param code the code (e.g., "4326")
+     * @return the CRS
+     */
+    public Crs createFromDatabase(String authName, String code) {
+        return new Crs(PROJ.createFromDatabase(handle(), authName, code), this);
+    }
+
+    /**
+     * Set how much PROJ logs for this context.
+     * @param level PJ_LOG_* level (0 none, 1 error, 2 debug, 3 trace)
+     * @return this context
+     */
+    public ProjContext logLevel(int level) {
+        PROJ.setLogLevel(handle(), level);
+        return this;
+    }
+
+    /**
+     * Whether {@link #close()} has been called.
+     * @return true once closed
+     */
+    public boolean isClosed() {
+        return closed.get();
+    }
+
+    /**
+     * Destroy the native context. Safe to call more than once.
+     */
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            Invokers.DESTROY.invoke(context);
+        }
+    }
+}
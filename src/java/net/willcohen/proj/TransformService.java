@@ -0,0 +1,348 @@
+package net.willcohen.proj;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Coalesces small transform requests from many threads into batched
+ * proj_trans_array calls.
+ *
+ * Requests are grouped by (source, target) into lanes. A lane owns a context
+ * cloned from the service's {@link ContextTemplate} and one {@link Transformer},
+ * so lanes never contend with each other or with callers' contexts. A lane
+ * runs its queued requests as one batch, in one pooled {@link CoordBuffer},
+ * once they reach {@code maxBatchSize} points or the oldest has waited
+ * {@code maxLatencyMicros}, whichever comes first:
+ * <pre>
+ * try (TransformService service = TransformService.create(200, 1024)) {
+ *     CompletableFuture&lt;double[]&gt; xyzt = service.transform("EPSG:4326", "EPSG:2249", 42.36, -71.06);
+ *     ...
+ * }
+ * </pre>
+ * Results are the transformed [x, y, z, t] values of each request. As with
+ * {@link PROJ#transArray}, points PROJ cannot transform come back as
+ * Infinity (HUGE_VAL) rather than failing the future; a future fails only
+ * when the lane's transformation cannot be created or the batch call throws.
+ * A pair whose transformation cannot be created is remembered, and later
+ * requests for it fail at once.
+ */
+public final class TransformService implements AutoCloseable {
+    private final long maxLatencyNanos;
+    private final int maxBatchSize;
+    private final ContextTemplate template;
+    private final ScheduledThreadPoolExecutor executor;
+    // Lanes are built by the first request for their pair, outside the map's
+    // locks; later requests for the pair wait on (or fail with) the future
+    private final ConcurrentHashMap<String, CompletableFuture<Lane>> lanes = new ConcurrentHashMap<>();
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder points = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder fullBatches = new LongAdder();
+
+    private TransformService(long maxLatencyMicros, int maxBatchSize, int threads) {
+        if (maxLatencyMicros < 0) throw new IllegalArgumentException("maxLatencyMicros must not be negative: " + maxLatencyMicros);
+        if (maxBatchSize <= 0) throw new IllegalArgumentException("maxBatchSize must be positive: " + maxBatchSize);
+        if (threads <= 0) throw new IllegalArgumentException("threads must be positive: " + threads);
+        this.maxLatencyNanos = TimeUnit.MICROSECONDS.toNanos(maxLatencyMicros);
+        this.maxBatchSize = maxBatchSize;
+        this.template = ContextTemplate.create();
+        AtomicInteger n = new AtomicInteger();
+        this.executor = new ScheduledThreadPoolExecutor(threads, r -> {
+            Thread t = new Thread(r, "proj-transform-service-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.executor.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Create a service that waits up to 100 microseconds and batches up to
+     * 1024 points, with one thread per available processor.
+     * @return the service
+     */
+    public static TransformService create() {
+        return create(100, 1024);
+    }
+
+    /**
+     * Create a service with one thread per available processor.
+     * @param maxLatencyMicros longest a request waits for others to join its batch
+     * @param maxBatchSize points that trigger a batch without waiting
+     * @return the service
+     */
+    public static TransformService create(long maxLatencyMicros, int maxBatchSize) {
+        return create(maxLatencyMicros, maxBatchSize, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create a service.
+     * @param maxLatencyMicros longest a request waits for others to join its batch
+     * @param maxBatchSize points that trigger a batch without waiting
+     * @param threads threads running batches; each lane uses one at a time
+     * @return the service
+     */
+    public static TransformService create(long maxLatencyMicros, int maxBatchSize, int threads) {
+        return new TransformService(maxLatencyMicros, maxBatchSize, threads);
+    }
+
+    /**
+     * Transform one point forward.
+     * @param sourceCrs source CRS (e.g., "EPSG:4326")
+     * @param targetCrs target CRS (e.g., "EPSG:2249")
+     * @param x first ordinate
+     * @param y second ordinate
+     * @return a future of the transformed [x, y, z, t]
+     */
+    public CompletableFuture<double[]> transform(String sourceCrs, String targetCrs, double x, double y) {
+        return submit(sourceCrs, targetCrs, new double[] {x, y, 0.0, 0.0});
+    }
+
+    /**
+     * Transform a few points forward.
+     * @param sourceCrs source CRS
+     * @param targetCrs target CRS
+     * @param interleaved [x, y, z, t] coordinates, length a positive multiple of 4;
+     *        not modified
+     * @return a future of the transformed coordinates, interleaved the same way
+     */
+    public CompletableFuture<double[]> submit(String sourceCrs, String targetCrs, double[] interleaved) {
+        if (interleaved.length == 0 || interleaved.length % 4 != 0) {
+            throw new IllegalArgumentException("Interleaved length must be a positive multiple of 4: " + interleaved.length);
+        }
+        if (closed.get()) {
+            return CompletableFuture.failedFuture(new IllegalStateException("TransformService is closed"));
+        }
+        Request request = new Request(interleaved.clone());
+        lane(sourceCrs, targetCrs).whenComplete((lane, e) -> {
+            if (e != null) {
+                request.future.completeExceptionally(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+                return;
+            }
+            requests.increment();
+            points.add(interleaved.length / 4);
+            lane.enqueue(request);
+        });
+        return request.future;
+    }
+
+    /** The pair's lane, building it on this thread if no other request has. */
+    private CompletableFuture<Lane> lane(String sourceCrs, String targetCrs) {
+        String key = sourceCrs + "\n" + targetCrs;
+        CompletableFuture<Lane> lane = lanes.get(key);
+        if (lane != null) {
+            return lane;
+        }
+        CompletableFuture<Lane> created = new CompletableFuture<>();
+        lane = lanes.putIfAbsent(key, created);
+        if (lane != null) {
+            return lane;
+        }
+        try {
+            created.complete(new Lane(sourceCrs, targetCrs));
+        } catch (RuntimeException e) {
+            created.completeExceptionally(e);
+        }
+        return created;
+    }
+
+    /**
+     * Counters since the service was created.
+     * @return map with "lanes" (pairs with a working transformation),
+     *         "requests", "points", "batches" and "fullBatches" (batches
+     *         started by maxBatchSize rather than the latency timer)
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new HashMap<>();
+        int built = 0;
+        for (CompletableFuture<Lane> lane : lanes.values()) {
+            if (lane.isDone() && !lane.isCompletedExceptionally()) built++;
+        }
+        m.put("lanes", built);
+        m.put("requests", requests.sum());
+        m.put("points", points.sum());
+        m.put("batches", batches.sum());
+        m.put("fullBatches", fullBatches.sum());
+        return m;
+    }
+
+    /**
+     * Whether {@link #close()} has been called.
+     * @return true once closed
+     */
+    public boolean isClosed() {
+        return closed.get();
+    }
+
+    /**
+     * Run every queued request, then free the lanes' transformations and
+     * contexts. Requests submitted afterwards fail. Safe to call more than once.
+     */
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            for (CompletableFuture<Lane> pending : lanes.values()) {
+                Lane lane;
+                try {
+                    lane = pending.join();
+                } catch (CompletionException e) {
+                    continue;
+                }
+                lane.drain();
+                lane.close();
+            }
+            lanes.clear();
+            template.close();
+        }
+    }
+
+    private static final class Request {
+        final double[] coords;
+        final CompletableFuture<double[]> future = new CompletableFuture<>();
+
+        Request(double[] coords) {
+            this.coords = coords;
+        }
+    }
+
+    private final class Lane {
+        private final ProjContext context;
+        private final Transformer transformer;
+        private final AtomicBoolean running = new AtomicBoolean();
+        private final Object lock = new Object();
+        private List<Request> pending = new ArrayList<>();
+        private int pendingPoints;
+        private boolean timerArmed;
+
+        Lane(String sourceCrs, String targetCrs) {
+            ProjContext ctx = template.newContext();
+            try {
+                this.transformer = ctx.createCrsToCrs(sourceCrs, targetCrs);
+            } catch (RuntimeException e) {
+                ctx.close();
+                throw e;
+            }
+            this.context = ctx;
+        }
+
+        void enqueue(Request request) {
+            boolean full = false;
+            boolean arm = false;
+            synchronized (lock) {
+                pending.add(request);
+                pendingPoints += request.coords.length / 4;
+                if (pendingPoints >= maxBatchSize) {
+                    full = true;
+                } else if (!timerArmed) {
+                    timerArmed = true;
+                    arm = true;
+                }
+            }
+            try {
+                if (full) {
+                    fullBatches.increment();
+                    executor.execute(this::drain);
+                } else if (arm) {
+                    executor.schedule(this::drain, maxLatencyNanos, TimeUnit.NANOSECONDS);
+                }
+            } catch (RuntimeException e) {
+                // Rejected during close(), which drains the lane itself
+            }
+        }
+
+        /** Run queued requests in batches of at most maxBatchSize points until none are left. */
+        void drain() {
+            if (!running.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                List<Request> batch;
+                while (!(batch = take()).isEmpty()) {
+                    run(batch);
+                }
+            } finally {
+                running.set(false);
+            }
+            boolean more;
+            synchronized (lock) {
+                more = !pending.isEmpty();
+            }
+            if (more && !executor.isShutdown()) {
+                // Arrived after the last take() while this drain was finishing
+                executor.execute(this::drain);
+            }
+        }
+
+        private List<Request> take() {
+            synchronized (lock) {
+                List<Request> batch = pending;
+                if (pendingPoints <= maxBatchSize) {
+                    pending = new ArrayList<>();
+                    pendingPoints = 0;
+                    timerArmed = false;
+                    return batch;
+                }
+                // Split off maxBatchSize points' worth of requests (at least one)
+                int n = 0;
+                int i = 0;
+                while (i < batch.size() && (i == 0 || n + batch.get(i).coords.length / 4 <= maxBatchSize)) {
+                    n += batch.get(i).coords.length / 4;
+                    i++;
+                }
+                pending = new ArrayList<>(batch.subList(i, batch.size()));
+                pendingPoints -= n;
+                return new ArrayList<>(batch.subList(0, i));
+            }
+        }
+
+        private void run(List<Request> batch) {
+            int length = 0;
+            for (Request r : batch) length += r.coords.length;
+            double[] flat = new double[length];
+            int offset = 0;
+            for (Request r : batch) {
+                System.arraycopy(r.coords, 0, flat, offset, r.coords.length);
+                offset += r.coords.length;
+            }
+            try (CoordBuffer buf = CoordBuffer.acquire(length / 4)) {
+                buf.set(flat);
+                transformer.transform(buf, length / 4, PROJ.PJ_FWD);
+                buf.getAll(flat);
+            } catch (Throwable t) {
+                for (Request r : batch) r.future.completeExceptionally(t);
+                return;
+            } finally {
+                batches.increment();
+            }
+            offset = 0;
+            for (Request r : batch) {
+                double[] out = new double[r.coords.length];
+                System.arraycopy(flat, offset, out, 0, out.length);
+                offset += out.length;
+                r.future.complete(out);
+            }
+        }
+
+        void close() {
+            transformer.close();
+            context.close();
+        }
+    }
+}
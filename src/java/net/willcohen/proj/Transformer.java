@@ -0,0 +1,130 @@
+package net.willcohen.proj;
+
+import clojure.lang.IFn;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A coordinate operation that frees its native memory in {@link #close()}.
+ *
+ * The proj_trans_array binding is resolved once at construction, so
+ * {@link #transform} calls go straight to the backend without looking up vars
+ * or building option maps. Fast paths and the point cache apply as in
+ * {@link PROJ#transArray}.
+ * The backend in use at construction is the one used for every call.
+ */
+public final class Transformer implements AutoCloseable {
+    private final Object pj;
+    private final ProjContext context;
+    private final IFn transArray;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    Transformer(Object pj, ProjContext context) {
+        if (pj == null) throw new IllegalArgumentException("PROJ could not create the transformation");
+        this.pj = pj;
+        this.context = context;
+        this.transArray = (IFn) Invokers.TRANS_ARRAY_INVOKER.invoke();
+    }
+
+    /**
+     * Create a transformation using the default context.
+     * @param sourceCrs source CRS (e.g., "EPSG:4326")
+     * @param targetCrs target CRS (e.g., "EPSG:2249")
+     * @return the transformer
+     */
+    public static Transformer create(String sourceCrs, String targetCrs) {
+        return new Transformer(PROJ.createCrsToCrs(sourceCrs, targetCrs), null);
+    }
+
+    /**
+     * Take ownership of a transformation from the static {@link PROJ} methods.
+     * {@link #close()} destroys it.
+     * @param transformation the transformation object
+     * @return the wrapped transformer
+     */
+    public static Transformer wrap(Object transformation) {
+        return new Transformer(transformation, null);
+    }
+
+    /**
+     * The underlying transformation object, for the static {@link PROJ} methods.
+     * @return the transformation object
+     */
+    public Object handle() {
+        if (closed.get()) throw new IllegalStateException("Transformer is closed");
+        return pj;
+    }
+
+    /**
+     * The context this transformer was created from.
+     * @return the context, or null if it used the default context
+     */
+    public ProjContext context() {
+        return context;
+    }
+
+    /**
+     * Transform every coordinate of a buffer forward, in place.
+     * @param coords the coordinates
+     * @return 0 on success, error code on failure
+     */
+    public int transform(CoordBuffer coords) {
+        return transform(coords, coords.size(), PROJ.PJ_FWD);
+    }
+
+    /**
+     * Transform every coordinate of a buffer in the given direction, in place.
+     * @param coords the coordinates
+     * @param direction {@link PROJ#PJ_FWD} or {@link PROJ#PJ_INV}
+     * @return 0 on success, error code on failure
+     */
+    public int transform(CoordBuffer coords, int direction) {
+        return transform(coords, coords.size(), direction);
+    }
+
+    /**
+     * Transform the first n coordinates of a buffer in place.
+     * @param coords the coordinates
+     * @param n number of coordinates to transform
+     * @param direction {@link PROJ#PJ_FWD} or {@link PROJ#PJ_INV}
+     * @return 0 on success, error code on failure
+     */
+    public int transform(CoordBuffer coords, int n, int direction) {
+        if (n > coords.size()) {
+            throw new IllegalArgumentException("n " + n + " exceeds buffer size " + coords.size());
+        }
+        Object p = handle();
+        Object ca = coords.handle();
+        if (PROJ.tryFastPath(p, ca, n, direction)) {
+            return 0;
+        }
+        PointCache cache = PROJ.pointCache();
+        if (cache != null && direction != 0) {
+            return PROJ.transArrayCached(cache, p, ca, n, direction, (c, m) -> call(p, c, m, direction));
+        }
+        return call(p, ca, n, direction);
+    }
+
+    private int call(Object p, Object ca, int n, int direction) {
+        Object result = transArray.invoke(p, ca, n, direction);
+        return result != null ? ((Number) result).intValue() : 0;
+    }
+
+    /**
+     * Whether {@link #close()} has been called.
+     * @return true once closed
+     */
+    public boolean isClosed() {
+        return closed.get();
+    }
+
+    /**
+     * Destroy the native transformation. Safe to call more than once.
+     */
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            Invokers.DESTROY.invoke(pj);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package net.willcohen.proj;
+
+/**
+ * Training run for an AppCDS archive.
+ *
+ * Initializes PROJ and runs a small transform through both the static
+ * {@link PROJ} methods and the handle classes, so the classes a typical
+ * short-lived program needs are loaded once and can be dumped:
+ * <pre>
+ * java -XX:ArchiveClassesAtExit=proj.jsa -cp proj-aot.jar:... net.willcohen.proj.Warmup
+ * java -XX:SharedArchiveFile=proj.jsa -cp proj-aot.jar:... your.Main
+ * </pre>
+ * Pass {@code --graal} to train the GraalVM WASM backend instead of native FFI.
+ * The classpath of the training run must be a prefix of the classpath used
+ * with the archive, and must contain only jars.
+ */
+public final class Warmup {
+
+    private Warmup() {}
+
+    public static void main(String[] args) {
+        boolean graal = args.length > 0 && args[0].equals("--graal");
+        if (graal) {
+            PROJ.forceGraal();
+        } else {
+            PROJ.init();
+        }
+
+        // Static API
+        Object ctx = PROJ.contextCreate();
+        Object transform = PROJ.createCrsToCrs(ctx, "EPSG:4326", "EPSG:3857");
+        Object coords = PROJ.coordArray(2);
+        PROJ.setCoords(coords, new double[][]{{42.3603222, -71.0579667}, {40.7128, -74.0060}});
+        PROJ.transArray(transform, coords, 2);
+        double[] out = PROJ.getAll(coords, new double[8]);
+
+        // Handle classes
+        try (ProjContext context = ProjContext.create();
+             Transformer t = context.createCrsToCrs("EPSG:4326", "EPSG:2249");
+             CoordBuffer buf = CoordBuffer.of(new double[]{42.3603222, -71.0579667, 0, 0})) {
+            t.transform(buf);
+            buf.getXcol(new double[1]);
+        }
+
+        System.out.println("PROJ warmup complete (" + (PROJ.isFfi() ? "ffi" : "graal")
+            + "): x=" + out[0] + ", y=" + out[1]);
+    }
+}
@@ -1,11 +1,13 @@
-// Simple HTTP server with optional COOP/COEP headers for SharedArrayBuffer support
+// Simple HTTP server with optional COOP/COEP headers for SharedArrayBuffer support.
+// Honours single "Range: bytes=a-b" requests with ETag/Last-Modified validators,
+// like cdn.proj.org, so it can stand in as a grid server.
 import { createServer } from 'http';
 import { readFile, stat } from 'fs/promises';
 import { join, extname } from 'path';
 import { fileURLToPath } from 'url';
 
 const __dirname = fileURLToPath(new URL('.', import.meta.url));
-const rootDir = join(__dirname, '../..');  // Project root
+const rootDir = process.env.ROOT || join(__dirname, '../..');  // Project root unless ROOT is set
 
 const PORT = parseInt(process.env.PORT || '8080');
 const ENABLE_COOP_COEP = process.env.COOP_COEP === 'true';
@@ -38,6 +40,7 @@ const server = createServer(async (req, res) => {
 
   try {
     const content = await readFile(filePath);
+    const { size, mtime } = await stat(filePath);
     const ext = extname(filePath);
     const mimeType = MIME_TYPES[ext] || 'application/octet-stream';
 
@@ -50,6 +53,26 @@ const server = createServer(async (req, res) => {
     // Always set CORS headers for resources
     res.setHeader('Access-Control-Allow-Origin', '*');
     res.setHeader('Content-Type', mimeType);
+    res.setHeader('Accept-Ranges', 'bytes');
+    res.setHeader('ETag', `"${size.toString(16)}-${mtime.getTime().toString(16)}"`);
+    res.setHeader('Last-Modified', mtime.toUTCString());
+
+    const range = /^bytes=(\d+)-(\d*)$/.exec(req.headers.range || '');
+    if (range) {
+      const start = Number(range[1]);
+      const end = Math.min(range[2] ? Number(range[2]) : size - 1, size - 1);
+      if (start > end) {
+        res.setHeader('Content-Range', `bytes */${size}`);
+        res.writeHead(416);
+        res.end();
+        return;
+      }
+      res.setHeader('Content-Range', `bytes ${start}-${end}/${size}`);
+      res.writeHead(206);
+      res.end(content.subarray(start, end + 1));
+      return;
+    }
+
     res.writeHead(200);
     res.end(content);
   } catch (err) {
@@ -1,7 +1,15 @@
 package net.willcohen.proj;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Test for the Java PROJ API.
@@ -42,6 +50,23 @@ public class PROJTest {
             testGetCodes();
             testTransformation();
             testTransformationFromPj();
+            testTransWkb();
+            testTransColumns();
+            testTransBounds();
+            testApproxTransformGrid();
+            testFastPath();
+            testCoordPool();
+            testBulkReadback();
+            testHandles();
+            testScratchContexts();
+            testContextTemplate();
+            testTransArrayByArea();
+            testTransArrayChecked();
+            testLogRouting();
+            testRangeCache();
+            testTransformService();
+            testPointCache();
+            testGeodesic();
             testGetCrsInfoList();
             testGetUnits();
             testGetCelestialBodies();
@@ -242,6 +267,608 @@ public class PROJTest {
         }
     }
 
+    private static void testTransWkb() {
+        System.out.println("\nTest: transWkb");
+        try {
+            Object ctx = PROJ.contextCreate();
+            Object transform = PROJ.createCrsToCrs(ctx, "EPSG:4326", "EPSG:2249");
+            ByteBuffer point = ByteBuffer.allocate(21).order(ByteOrder.LITTLE_ENDIAN);
+            point.put((byte) 1).putInt(1).putDouble(42.3603222).putDouble(-71.0579667).flip();
+            List<ByteBuffer> result = PROJ.transWkb(transform, Arrays.asList(point, point.duplicate()));
+            if (result == null || result.size() != 2) {
+                fail("transWkb should return 2 geometries");
+                return;
+            }
+            ByteBuffer out = result.get(1).order(ByteOrder.LITTLE_ENDIAN);
+            double x = out.getDouble(5);
+            double y = out.getDouble(13);
+            if (x > 775000 && x < 776000 && y > 2956000 && y < 2957000) {
+                pass("transWkb point transformed: " + x + ", " + y);
+            } else {
+                fail("transWkb point should be ~(775200, 2956400), got " + x + ", " + y);
+            }
+        } catch (Exception e) {
+            fail("transWkb failed: " + e.getMessage());
+        }
+    }
+
+    private static void testTransColumns() {
+        System.out.println("\nTest: transColumns");
+        try {
+            Object ctx = PROJ.contextCreate();
+            Object transform = PROJ.createCrsToCrs(ctx, "EPSG:4326", "EPSG:2249");
+            double[] x = {42.3603222, 42.3551};
+            double[] y = {-71.0579667, -71.0656};
+            long n = PROJ.transColumns(transform, x, y, null, null);
+            if (n != 2) {
+                fail("transColumns should transform 2 coordinates, got " + n);
+                return;
+            }
+            if (x[0] > 775000 && x[0] < 776000 && y[0] > 2956000 && y[0] < 2957000) {
+                pass("transColumns transformed in place: " + x[0] + ", " + y[0]);
+            } else {
+                fail("transColumns should give ~(775200, 2956400), got " + x[0] + ", " + y[0]);
+            }
+            // Direct buffers go to PROJ without staging and must give the same result
+            DoubleBuffer dx = ByteBuffer.allocateDirect(16).order(ByteOrder.nativeOrder()).asDoubleBuffer();
+            DoubleBuffer dy = ByteBuffer.allocateDirect(16).order(ByteOrder.nativeOrder()).asDoubleBuffer();
+            dx.put(0, 42.3603222).put(1, 42.3551);
+            dy.put(0, -71.0579667).put(1, -71.0656);
+            long dn = PROJ.transColumns(transform, dx, dy, null, null, PROJ.PJ_FWD);
+            if (dn == 2 && dx.get(0) == x[0] && dy.get(1) == y[1]) {
+                pass("transColumns transformed direct buffers in place: " + dx.get(0) + ", " + dy.get(0));
+            } else {
+                fail("Direct-buffer transColumns gave " + dn + " points, " + dx.get(0) + ", " + dy.get(0));
+            }
+        } catch (Exception e) {
+            fail("transColumns failed: " + e.getMessage());
+        }
+    }
+
+    private static void testTransBounds() {
+        System.out.println("\nTest: transBounds");
+        try {
+            Object ctx = PROJ.contextCreate();
+            Object transform = PROJ.createCrsToCrs(ctx, "EPSG:4326", "EPSG:2249");
+            // Two boxes around Boston, lat/lon order
+            double[] boxes = {42.35, -71.07, 42.37, -71.05, 42.30, -71.10, 42.40, -71.00};
+            double[] out = PROJ.transBounds(transform, boxes, 21);
+            if (out == null || out.length != 8) {
+                fail("transBounds should return 8 values");
+                return;
+            }
+            if (out[0] < out[2] && out[1] < out[3] && out[0] > 700000 && out[2] < 850000) {
+                pass("transBounds box: " + out[0] + ", " + out[1] + ", " + out[2] + ", " + out[3]);
+            } else {
+                fail("transBounds returned unexpected box: " + out[0] + ", " + out[1] + ", " + out[2] + ", " + out[3]);
+            }
+            if (out[4] < out[0] && out[6] > out[2]) {
+                pass("transBounds larger box contains smaller box");
+            } else {
+                fail("transBounds larger box should contain smaller box");
+            }
+        } catch (Exception e) {
+            fail("transBounds failed: " + e.getMessage());
+        }
+    }
+
+    private static void testApproxTransformGrid() {
+        System.out.println("\nTest: approxTransformGrid");
+        try {
+            Object ctx = PROJ.contextCreate();
+            Object transform = PROJ.createCrsToCrs(ctx, "EPSG:3857", "EPSG:4326");
+            double[] gt = {-8200000.0, 1000.0, 0.0, 5300000.0, 0.0, -1000.0};
+            Map<String, Object> result = PROJ.approxTransformGrid(transform, 64, 64, gt, 1.0e-6);
+            double[] x = (double[]) result.get("x");
+            if (x != null && x.length == 64 * 64) {
+                pass("approxTransformGrid returned " + x.length + " source coordinates");
+            } else {
+                fail("approxTransformGrid should return 4096 source coordinates");
+            }
+            double achieved = ((Number) result.get("maxError")).doubleValue();
+            if (achieved <= 1.0e-6) {
+                pass("approxTransformGrid achieved error " + achieved);
+            } else {
+                fail("approxTransformGrid error " + achieved + " exceeds 1e-6");
+            }
+        } catch (Exception e) {
+            fail("approxTransformGrid failed: " + e.getMessage());
+        }
+    }
+
+    private static void testFastPath() {
+        System.out.println("\nTest: fast paths (" + PROJ.fastPathEngine() + ")");
+        try {
+            Object ctx = PROJ.contextCreate();
+            int n = 101;
+            double[] latlon = new double[n * 4];
+            for (int i = 0; i < n; i++) {
+                latlon[i * 4] = -80.0 + i * 1.6;
+                latlon[i * 4 + 1] = -179.0 + i * 3.5;
+                latlon[i * 4 + 2] = i * 25.0;
+            }
+
+            Object merc = PROJ.createCrsToCrs(ctx, "EPSG:4326", "EPSG:3857");
+            if (PROJ.fastPathFor(merc) != null) {
+                pass("EPSG:4326 -> EPSG:3857 uses fast path " + PROJ.fastPathFor(merc));
+            } else {
+                fail("EPSG:4326 -> EPSG:3857 should match a fast path");
+            }
+            double fwd = PROJ.verifyFastPath(merc, latlon, 1);
+            if (fwd < 1.0e-4) {
+                pass("webmerc forward agrees with PROJ within " + fwd + " m");
+            } else {
+                fail("webmerc forward deviates from PROJ by " + fwd + " m");
+            }
+            double[][] input = new double[n][];
+            for (int i = 0; i < n; i++) {
+                input[i] = Arrays.copyOfRange(latlon, i * 4, i * 4 + 4);
+            }
+            Object ca = PROJ.coordArray(n);
+            PROJ.setCoords(ca, input);
+            PROJ.transArray(merc, ca, n);
+            double[] projected = new double[n * 4];
+            for (int i = 0; i < n; i++) {
+                System.arraycopy(PROJ.getCoords(ca, i), 0, projected, i * 4, 4);
+            }
+            double inv = PROJ.verifyFastPath(merc, projected, -1);
+            if (inv < 1.0e-9) {
+                pass("webmerc inverse agrees with PROJ within " + inv + " degrees");
+            } else {
+                fail("webmerc inverse deviates from PROJ by " + inv + " degrees");
+            }
+
+            Object cart = PROJ.createCrsToCrs(ctx, "EPSG:4979", "EPSG:4978");
+            double geocentric = PROJ.verifyFastPath(cart, latlon, 1);
+            if (geocentric < 1.0e-4) {
+                pass("cart forward agrees with PROJ within " + geocentric + " m");
+            } else {
+                fail("cart forward deviates from PROJ by " + geocentric + " m (fast path " + PROJ.fastPathFor(cart) + ")");
+            }
+            // Cartesian inverse (Bowring) against PROJ, from PROJ's own geocentric output
+            Object cartCa = PROJ.coordArray(n);
+            PROJ.setCoords(cartCa, input);
+            PROJ.transArray(cart, cartCa, n);
+            double[] xyz = new double[n * 4];
+            for (int i = 0; i < n; i++) {
+                System.arraycopy(PROJ.getCoords(cartCa, i), 0, xyz, i * 4, 4);
+            }
+            double[] cartInv = PROJ.verifyFastPathOrdinates(cart, xyz, -1);
+            if (cartInv != null && cartInv[0] < 1.0e-11 && cartInv[1] < 1.0e-11 && cartInv[2] < 1.0e-6) {
+                pass("cart inverse agrees with PROJ within " + Arrays.toString(cartInv) + " (deg, deg, m)");
+            } else {
+                fail("cart inverse deviates from PROJ by " + Arrays.toString(cartInv) + " (fast path " + PROJ.fastPathFor(cart) + ")");
+            }
+
+            Object utm = PROJ.createCrsToCrs(ctx, "EPSG:4326", "EPSG:32618");
+            if (PROJ.fastPathFor(utm) == null) {
+                pass("EPSG:4326 -> EPSG:32618 falls back to PROJ");
+            } else {
+                fail("EPSG:4326 -> EPSG:32618 should not match a fast path");
+            }
+
+            double[] polar = latlon.clone();
+            polar[4] = 90.0;
+            if (Double.isNaN(PROJ.verifyFastPath(merc, polar, 1))) {
+                pass("Coordinates at the pole are left to PROJ");
+            } else {
+                fail("Coordinates at the pole should not use the fast path");
+            }
+        } catch (Exception e) {
+            fail("Fast path test failed: " + e.getMessage());
+        }
+    }
+
+    private static void testCoordPool() {
+        System.out.println("\nTest: coordinate array pool");
+        try {
+            Object ctx = PROJ.contextCreate();
+            Object transform = PROJ.createCrsToCrs(ctx, "EPSG:4326", "EPSG:2249");
+            long hits = ((Number) PROJ.coordPoolStats().get("hits")).longValue();
+            for (int i = 0; i < 3; i++) {
+                Object coords = PROJ.acquireCoordArray(2);
+                PROJ.setCoords(coords, new double[][]{{42.3603222, -71.0579667}, {42.3551, -71.0656}});
+                PROJ.transArray(transform, coords, 2);
+                double x = PROJ.getCoords(coords, 0)[0];
+                PROJ.releaseCoordArray(coords);
+                if (x < 775000 || x > 776000) {
+                    fail("Pooled coordinate array transformed to unexpected x " + x);
+                    return;
+                }
+            }
+            Map<String, Object> stats = PROJ.coordPoolStats();
+            long reused = ((Number) stats.get("hits")).longValue() - hits;
+            if (reused >= 2) {
+                pass("Pool reused released buffers (" + reused + " hits)");
+            } else {
+                fail("Pool should reuse released buffers, got " + reused + " hits");
+            }
+            if (((Number) stats.get("pooledBytes")).longValue() > 0) {
+                pass("Pool reports idle bytes: " + stats.get("pooledBytes"));
+            } else {
+                fail("Pool should report idle bytes after release");
+            }
+        } catch (Exception e) {
+            fail("Coordinate pool test failed: " + e.getMessage());
+        }
+    }
+
+    private static void testBulkReadback() {
+        System.out.println("\nTest: bulk column readback");
+        try {
+            Object ctx = PROJ.contextCreate();
+            Object transform = PROJ.createCrsToCrs(ctx, "EPSG:4326", "EPSG:3857");
+            Object coords = PROJ.coordArray(2);
+            PROJ.setCoords(coords, new double[][]{{42.3603222, -71.0579667, 5.0}, {42.3551, -71.0656, 7.0}});
+            PROJ.transArray(transform, coords, 2);
+            double[] xs = PROJ.getXcol(coords, new double[2]);
+            double[] ys = PROJ.getYcol(coords, new double[2]);
+            double[] zs = PROJ.getZcol(coords, new double[2]);
+            double[] all = PROJ.getAll(coords, new double[8]);
+            boolean matches = true;
+            for (int i = 0; i < 2; i++) {
+                double[] single = PROJ.getCoords(coords, i);
+                matches &= xs[i] == single[0] && ys[i] == single[1]
+                    && Arrays.equals(single, Arrays.copyOfRange(all, i * 4, i * 4 + 4));
+            }
+            if (matches) {
+                pass("getXcol/getYcol/getAll match getCoords");
+            } else {
+                fail("Bulk readback differs from getCoords");
+            }
+            if (zs[0] == 5.0 && zs[1] == 7.0) {
+                pass("getZcol returns z values");
+            } else {
+                fail("getZcol returned " + Arrays.toString(zs));
+            }
+        } catch (Exception e) {
+            fail("Bulk readback test failed: " + e.getMessage());
+        }
+    }
+
+    private static void testHandles() {
+        System.out.println("\nTest: AutoCloseable handles");
+        try {
+            Transformer leaked;
+            CoordBuffer closedBuffer;
+            try (ProjContext ctx = ProjContext.create();
+                 Crs wgs84 = ctx.createFromDatabase("EPSG", "4326");
+                 Crs massState = ctx.createFromDatabase("EPSG", "2249");
+                 Transformer t = wgs84.transformerTo(massState);
+                 CoordBuffer coords = CoordBuffer.of(new double[]{42.3603222, -71.0579667, 0, 0})) {
+                if (t.transform(coords) == 0) {
+                    double x = coords.getXcol(new double[1])[0];
+                    if (x > 775000 && x < 776000) {
+                        pass("Transformer.transform on CoordBuffer: x=" + x);
+                    } else {
+                        fail("Transformer.transform produced unexpected x " + x);
+                    }
+                } else {
+                    fail("Transformer.transform returned an error");
+                }
+                if ("WGS 84".equals(wgs84.name())) {
+                    pass("Crs.name returns " + wgs84.name());
+                } else {
+                    fail("Crs.name returned " + wgs84.name());
+                }
+                leaked = t;
+                closedBuffer = coords;
+            }
+            if (leaked.isClosed() && closedBuffer.isClosed()) {
+                pass("try-with-resources closes handles");
+            } else {
+                fail("Handles should be closed after try-with-resources");
+            }
+            leaked.close();
+            pass("Closing twice is a no-op");
+            try {
+                leaked.handle();
+                fail("Closed Transformer should reject use");
+            } catch (IllegalStateException e) {
+                pass("Closed Transformer rejects use");
+            }
+        } catch (Exception e) {
+            fail("Handle test failed: " + e.getMessage());
+        }
+    }
+
+    private static void testScratchContexts() {
+        System.out.println("\nTest: Scratch contexts");
+        try {
+            PROJ.clearScratchContexts();
+            Object a = PROJ.createCrsToCrs("EPSG:4326", "EPSG:3857");
+            Object b = PROJ.createCrsToCrs("EPSG:4326", "EPSG:3857");
+            clojure.lang.Keyword k = clojure.lang.Keyword.intern("proj-context");
+            Object aCtx = ((clojure.lang.IMeta) a).meta().valAt(k);
+            Object bCtx = ((clojure.lang.IMeta) b).meta().valAt(k);
+            if (aCtx != null && aCtx != bCtx) {
+                pass("createCrsToCrs without a context gives each transformer its own context");
+            } else {
+                fail("Transformers created without a context should not share one");
+            }
+            if (PROJ.clearScratchContexts() == 0) {
+                pass("Object-creating calls do not use scratch contexts");
+            } else {
+                fail("createCrsToCrs should not borrow a scratch context");
+            }
+        } catch (Exception e) {
+            fail("Scratch context test failed: " + e.getMessage());
+        }
+    }
+
+    private static void testContextTemplate() {
+        System.out.println("\nTest: Context templates");
+        try {
+            ProjContext clone;
+            try (ContextTemplate template = ContextTemplate.create().logLevel(1)) {
+                clone = template.newContext();
+                if (clone.handle() != template.handle()) {
+                    pass("newContext returns a separate context");
+                } else {
+                    fail("newContext should not return the template");
+                }
+            }
+            try (ProjContext ctx = clone;
+                 Transformer t = ctx.createCrsToCrs("EPSG:4326", "EPSG:2249");
+                 CoordBuffer coords = CoordBuffer.of(new double[]{42.3603222, -71.0579667, 0, 0})) {
+                t.transform(coords);
+                double x = coords.getXcol(new double[1])[0];
+                if (x > 775000 && x < 776000) {
+                    pass("Cloned context transforms after the template is closed: x=" + x);
+                } else {
+                    fail("Cloned context produced unexpected x " + x);
+                }
+            }
+        } catch (Exception e) {
+            fail("Context template test failed: " + e.getMessage());
+        }
+    }
+
+    private static void testTransArrayByArea() {
+        System.out.println("\nTest: Area-aware per-point operation selection");
+        try {
+            Object candidates = PROJ.operationCandidates(null, "EPSG:4230", "EPSG:4326");
+            List<String> names = PROJ.candidateNames(candidates);
+            Object coords = PROJ.coordArray(2);
+            // ED50 is lat/lon: Madrid, Oslo
+            PROJ.setCoords(coords, new double[][]{{40.4168, -3.7038, 0, 0}, {59.9139, 10.7522, 0, 0}});
+            int[] choice = PROJ.transArrayByArea(candidates, coords, 2, PROJ.PJ_FWD);
+            if (choice[0] >= 0 && choice[1] >= 0) {
+                pass("Madrid and Oslo use " + names.get(choice[0]) + " and " + names.get(choice[1]));
+            } else {
+                fail("Expected an operation for each point, got " + Arrays.toString(choice));
+            }
+            double[] out = PROJ.getAll(coords, new double[8]);
+            if (Math.abs(out[0] - 40.4168) < 0.01 && Math.abs(out[5] - 10.7522) < 0.01) {
+                pass("Transformed coordinates stay in input order");
+            } else {
+                fail("Unexpected coordinates " + Arrays.toString(out));
+            }
+        } catch (Exception e) {
+            fail("Area-aware transform test failed: " + e.getMessage());
+        }
+    }
+
+    private static void testTransArrayChecked() {
+        System.out.println("\nTest: Per-point error reporting");
+        try {
+            Object ctx = PROJ.contextCreate();
+            Object transform = PROJ.createCrsToCrs(ctx, "EPSG:4326", "EPSG:3857");
+            Object coords = PROJ.coordArray(3);
+            double[][] pts = {{42.3603222, -71.0579667, 0, 0}, {95, 0, 0, 0}, {40.7128, -74.0060, 0, 0}};
+            PROJ.setCoords(coords, pts);
+            int[] codes = PROJ.transArrayChecked(transform, coords, 3, PROJ.PJ_FWD);
+            if (codes[0] == 0 && codes[1] >= 2048 && codes[1] < 4096 && codes[2] == 0) {
+                pass("Invalid latitude reported with code " + codes[1]);
+            } else {
+                fail("Unexpected codes " + Arrays.toString(codes));
+            }
+            Map<String, Object> summary = PROJ.errorCounts(codes);
+            @SuppressWarnings("unchecked")
+            Map<String, Object> classes = (Map<String, Object>) summary.get("classes");
+            if (((Number) classes.get("coordTransfm")).intValue() == 1) {
+                pass("Error counts by class");
+            } else {
+                fail("Unexpected error summary " + summary);
+            }
+            PROJ.setCoords(coords, pts);
+            long[] valid = PROJ.transArrayValidity(transform, coords, 3, PROJ.PJ_FWD);
+            if (valid.length == 1 && valid[0] == 0b101L) {
+                pass("Validity bitmap marks the good points");
+            } else {
+                fail("Unexpected bitmap " + Arrays.toString(valid));
+            }
+        } catch (Exception e) {
+            fail("Per-point error test failed: " + e.getMessage());
+        }
+    }
+
+    private static void testLogRouting() {
+        System.out.println("\nTest: Per-context log levels and log routing");
+        try (ProjContext context = ProjContext.create()) {
+            context.logLevel(PROJ.PJ_LOG_DEBUG).logLevel(PROJ.PJ_LOG_ERROR);
+            pass("Per-context log level set");
+            long before = ((Number) PROJ.logStats().get("enqueued")).longValue();
+            try {
+                context.createCrs("+proj=does-not-exist");
+            } catch (Exception expected) {
+                // PROJ logs the failure either way
+            }
+            PROJ.flushLogs();
+            Map<String, Object> stats = PROJ.logStats();
+            long after = ((Number) stats.get("enqueued")).longValue();
+            if (!PROJ.isFfi() || after > before) {
+                pass("Native log messages are buffered: " + stats);
+            } else {
+                fail("Expected an enqueued message, got " + stats);
+            }
+        } catch (Exception e) {
+            fail("Log routing test failed: " + e.getMessage());
+        }
+    }
+
+    private static void testRangeCache() {
+        System.out.println("\nTest: Grid range cache settings and stats");
+        try {
+            PROJ.configureRangeCache(null, 64L * 1024 * 1024, 8L * 1024 * 1024);
+            Map<String, Object> stats = PROJ.rangeCacheStats();
+            if (stats.containsKey("misses") && stats.containsKey("diskBlocks")
+                    && Boolean.TRUE.equals(stats.get("enabled"))) {
+                pass("Range cache configured: " + stats);
+            } else {
+                fail("Unexpected range cache stats: " + stats);
+            }
+        } catch (Exception e) {
+            fail("Range cache test failed: " + e.getMessage());
+        }
+    }
+
+    private static void testTransformService() {
+        System.out.println("\nTest: Micro-batching transform service");
+        try (TransformService service = TransformService.create(2000, 64, 2)) {
+            List<CompletableFuture<double[]>> futures = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                futures.add(service.transform("EPSG:4326", "EPSG:2249", 42.3603222, -71.0579667 + i * 1e-4));
+            }
+            double[] first = futures.get(0).get(10, TimeUnit.SECONDS);
+            double[] last = futures.get(199).get(10, TimeUnit.SECONDS);
+            if (first[0] > 775000 && first[0] < 776000 && last[0] > first[0]) {
+                pass("Each request gets its own result: x=" + first[0] + ", " + last[0]);
+            } else {
+                fail("Unexpected results " + Arrays.toString(first) + " " + Arrays.toString(last));
+            }
+            Map<String, Object> stats = service.stats();
+            long batches = ((Number) stats.get("batches")).longValue();
+            if (batches > 0 && batches < 200) {
+                pass("200 requests ran in " + batches + " batches: " + stats);
+            } else {
+                fail("Expected requests to be coalesced, got " + stats);
+            }
+            try {
+                service.transform("EPSG:4326", "NOT:A_CRS", 0, 0).get(10, TimeUnit.SECONDS);
+                fail("Expected an unknown CRS to fail the future");
+            } catch (ExecutionException expected) {
+                pass("Unknown CRS fails the future");
+            }
+            CompletableFuture<double[]> again = service.transform("EPSG:4326", "NOT:A_CRS", 0, 0);
+            if (again.isCompletedExceptionally() && ((Number) service.stats().get("lanes")).intValue() == 1) {
+                pass("A failed pair fails later requests at once, without a lane");
+            } else {
+                fail("Expected the failed pair to be remembered: " + service.stats());
+            }
+        } catch (Exception e) {
+            fail("Transform service test failed: " + e.getMessage());
+        }
+    }
+
+    private static void testPointCache() {
+        System.out.println("\nTest: Quantized point cache");
+        try {
+            PROJ.configurePointCache(1e-7, 4096);
+            Object ctx = PROJ.contextCreate();
+            Object transform = PROJ.createCrsToCrs(ctx, "EPSG:4326", "EPSG:2249");
+            Object first = PROJ.coordArray(2);
+            PROJ.setCoords(first, new double[][]{{42.3603222, -71.0579667, 0, 0}, {42.3505, -71.1054, 0, 0}});
+            PROJ.transArray(transform, first, 2);
+            // One repeated point and one new one
+            Object second = PROJ.coordArray(2);
+            PROJ.setCoords(second, new double[][]{{42.3603222, -71.0579667, 0, 0}, {42.3736, -71.1097, 0, 0}});
+            PROJ.transArray(transform, second, 2);
+            double[] a = PROJ.getAll(first, new double[8]);
+            double[] b = PROJ.getAll(second, new double[8]);
+            Map<String, Object> stats = PROJ.pointCacheStats();
+            if (a[0] == b[0] && a[1] == b[1] && b[4] != a[4] && ((Number) stats.get("hits")).longValue() == 1) {
+                pass("Repeated point served from the cache: " + stats);
+            } else {
+                fail("Unexpected cached results " + Arrays.toString(a) + " " + Arrays.toString(b) + " " + stats);
+            }
+            if (b[4] > 700000 && b[4] < 800000) {
+                pass("Points missing from the cache still go to PROJ: x=" + b[4]);
+            } else {
+                fail("Unexpected x for the uncached point " + b[4]);
+            }
+        } catch (Exception e) {
+            fail("Point cache test failed: " + e.getMessage());
+        } finally {
+            PROJ.disablePointCache();
+        }
+    }
+
+    private static void testGeodesic() {
+        System.out.println("\nTest: Batch geodesic distance, azimuth and area");
+        try {
+            Object ctx = PROJ.contextCreate();
+            Object crs = PROJ.createFromDatabase(ctx, "EPSG", "4326");
+            Geodesic g = Geodesic.forObject(ctx, crs);
+            if (g.semiMajor() == 6378137.0 && Math.abs(1 / g.flattening() - 298.257223563) < 1e-6) {
+                pass("Ellipsoid taken from EPSG:4326");
+            } else {
+                fail("Unexpected ellipsoid a=" + g.semiMajor() + " f=" + g.flattening());
+            }
+            // Reference values from GeographicLib's test set (GeodTest.dat);
+            // distances to 0.1 mm, azimuths to 1e-9 degrees
+            double[][] ref = {
+                {35.60777, -139.44815, -11.17491, -69.95921, 8935244.5604818305, 111.098748429560326, 129.289270889708762},
+                {55.52454, 106.05087, 77.03196, 197.18234, 4105086.1713924406, 22.020059880982801, 109.112041110671519},
+                {-21.97856, 142.59065, 41.84138, 98.56635, 8394328.894657671, -32.44456876433189, -41.84359951440466}};
+            Object coords = PROJ.coordArray(3);
+            PROJ.setCoords(coords, new double[][]{{ref[0][0], ref[0][1], 0, 0}, {ref[0][2], ref[0][3], 0, 0}, {ref[2][2], ref[2][3], 0, 0}});
+            double[] distance = new double[2], azi1 = new double[2], azi2 = new double[2], cumulative = new double[3];
+            double total = g.segments(coords, 3, true, distance, azi1, azi2, cumulative);
+            if (Math.abs(distance[0] - ref[0][4]) < 1e-4 && Math.abs(azi1[0] - ref[0][5]) < 1e-9
+                    && Math.abs(azi2[0] - ref[0][6]) < 1e-9
+                    && cumulative[2] == total && Math.abs(total - distance[0] - distance[1]) < 1e-6) {
+                pass("Segments: " + Arrays.toString(distance) + " azimuths " + Arrays.toString(azi1));
+            } else {
+                fail("Unexpected segments " + Arrays.toString(distance) + " " + Arrays.toString(azi1) + " " + Arrays.toString(cumulative));
+            }
+            boolean inverseOk = true;
+            double[] pairs = new double[8 * ref.length];
+            for (int i = 0; i < ref.length; i++) {
+                double[] r = g.inverse(ref[i][0], ref[i][1], ref[i][2], ref[i][3]);
+                inverseOk &= Math.abs(r[0] - ref[i][4]) < 1e-4 && Math.abs(r[1] - ref[i][5]) < 1e-9
+                    && Math.abs(r[2] - ref[i][6]) < 1e-9;
+                // Longitude first this time, as in OGC:CRS84
+                pairs[8 * i] = ref[i][1];
+                pairs[8 * i + 1] = ref[i][0];
+                pairs[8 * i + 4] = ref[i][3];
+                pairs[8 * i + 5] = ref[i][2];
+            }
+            double[] pairDistance = new double[ref.length];
+            g.pairs(pairs, ref.length, false, pairDistance, null, null);
+            for (int i = 0; i < ref.length; i++) inverseOk &= Math.abs(pairDistance[i] - ref[i][4]) < 1e-4;
+            double[] d = g.direct(ref[0][0], ref[0][1], ref[0][5], ref[0][4]);
+            if (inverseOk && Math.abs(d[0] - ref[0][2]) < 1e-9 && Math.abs(d[1] - ref[0][3]) < 1e-9
+                    && Math.abs(d[2] - ref[0][6]) < 1e-9) {
+                pass("Inverse, pairs and direct match GeographicLib");
+            } else {
+                fail("Unexpected inverse or direct: " + Arrays.toString(pairDistance) + " " + Arrays.toString(d));
+            }
+            // Square caps around both poles (the southern one clockwise), a
+            // diamond on the equator and one octant of the ellipsoid
+            double[] rings = {89, 0, 0, 0, 89, 90, 0, 0, 89, 180, 0, 0, 89, 270, 0, 0,
+                              -89, 0, 0, 0, -89, 90, 0, 0, -89, 180, 0, 0, -89, 270, 0, 0,
+                              0, -1, 0, 0, -1, 0, 0, 0, 0, 1, 0, 0, 1, 0, 0, 0,
+                              90, 0, 0, 0, 0, 0, 0, 0, 0, 90, 0, 0};
+            double[] areas = new double[4], perimeters = new double[4];
+            g.ringAreas(rings, 15, new int[]{0, 4, 8, 12}, true, areas, perimeters);
+            double[] refAreas = {24952305678.0, -24952305678.0, 24619419146.0, 63758202715511.0};
+            double[] refPerimeters = {631819.8745, 631819.8745, 627598.2731, 30022685.6300};
+            boolean areasOk = true;
+            for (int k = 0; k < 4; k++) {
+                areasOk &= Math.abs(areas[k] - refAreas[k]) < 1 && Math.abs(perimeters[k] - refPerimeters[k]) < 1e-4;
+            }
+            if (areasOk && Math.abs(areas[3] - g.ellipsoidArea() / 8) < 1
+                    && Arrays.equals(g.ringAreas(rings, 15, new int[]{0, 4, 8, 12}, true), areas)) {
+                pass("Ring areas: " + Arrays.toString(areas));
+            } else {
+                fail("Unexpected ring areas " + Arrays.toString(areas) + " perimeters " + Arrays.toString(perimeters));
+            }
+        } catch (Exception e) {
+            fail("Geodesic test failed: " + e.getMessage());
+        }
+    }
+
     private static void testTransformationFromPj() {
         System.out.println("Test: Coordinate transformation from PJ objects");
         try {
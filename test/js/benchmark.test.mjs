@@ -5,7 +5,9 @@
  *
  * Tests actual parallelism by creating multiple contexts (round-robined to
  * workers), each with its own transformer + coord array, then firing all
- * transforms concurrently via Promise.all.
+ * transforms concurrently via Promise.all. Also times one large array split
+ * across the pool with transArrayParallel, and compares setCoords input
+ * formats (nested arrays against typed arrays).
  *
  * Run with: node --test test/js/benchmark.test.mjs
  */
@@ -15,6 +17,7 @@ import assert from 'node:assert';
 
 const COORDS_PER_CONTEXT = 100000;
 const WORKER_COUNTS = [1, 2, 4];
+const SINGLE_ARRAY_COORDS = 1000000;
 
 function generateRandomCoords(n) {
   const coords = [];
@@ -112,9 +115,74 @@ async function benchConcurrentCRSCreation(proj, numOps) {
   return { elapsed, count: numOps };
 }
 
+/**
+ * Test C: One large array, scattered across the pool and gathered in place.
+ * The transformer is replicated to every worker before timing starts.
+ */
+async function benchScatterGather(proj, coords) {
+  const transformer = await proj.proj_create_crs_to_crs({
+    source_crs: "EPSG:4326",
+    target_crs: "EPSG:3857"
+  });
+  const coordArray = await proj.coord_array(SINGLE_ARRAY_COORDS);
+  for (let w = 0; w < proj.getWorkerCount(); w++) {
+    await proj.replicateTransformer(transformer, w);
+  }
+
+  await proj.set_coords_BANG_(coordArray, coords);
+  const start = performance.now();
+  const rc = await proj.transArrayParallel({ p: transformer, coord: coordArray, n: SINGLE_ARRAY_COORDS });
+  const elapsed = performance.now() - start;
+  assert.strictEqual(rc, 0, 'transArrayParallel should succeed');
+
+  const first = await proj.get_coord_array(coordArray, 0);
+  const last = await proj.get_coord_array(coordArray, SINGLE_ARRAY_COORDS - 1);
+  return { elapsed, spotChecks: [[first[0], first[1]], [last[0], last[1]]] };
+}
+
+/**
+ * Test D: setCoords from nested arrays, an interleaved Float64Array, a
+ * strided xy Float64Array and column Float64Arrays. All must fill the coord
+ * array identically.
+ */
+async function benchSetCoords(proj, coords) {
+  const n = coords.length;
+  const interleaved = new Float64Array(n * 4);
+  const xy = new Float64Array(n * 2);
+  const xs = new Float64Array(n);
+  const ys = new Float64Array(n);
+  for (let i = 0; i < n; i++) {
+    interleaved.set(coords[i], i * 4);
+    xy[i * 2] = xs[i] = coords[i][0];
+    xy[i * 2 + 1] = ys[i] = coords[i][1];
+  }
+
+  const inputs = {
+    'nested arrays': coords,
+    'Float64Array xyzt': interleaved,
+    'Float64Array xy, stride 2': { data: xy, stride: 2 },
+    'column Float64Arrays': { x: xs, y: ys }
+  };
+  const timings = {};
+  let reference = null;
+  for (const [name, input] of Object.entries(inputs)) {
+    const ca = await proj.coord_array(n);
+    const start = performance.now();
+    await proj.set_coords_BANG_(ca, input);
+    timings[name] = performance.now() - start;
+    if (reference === null) {
+      reference = ca.buffer;
+    } else {
+      assert.deepStrictEqual(ca.buffer, reference, `${name} should fill the array like nested arrays`);
+    }
+  }
+  return timings;
+}
+
 describe('Multi-worker benchmark', () => {
   const transformTimings = {};
   const crsTimings = {};
+  const scatterTimings = {};
 
   for (const workerCount of WORKER_COUNTS) {
     test(`concurrent transforms with ${workerCount} worker(s)`, async () => {
@@ -166,6 +234,44 @@ describe('Multi-worker benchmark', () => {
     });
   }
 
+  for (const workerCount of WORKER_COUNTS) {
+    test(`single-array scatter/gather with ${workerCount} worker(s)`, async () => {
+      const proj = await import('../../src/cljc/net/willcohen/proj/dist/proj.mjs');
+
+      if (proj.shutdown) await proj.shutdown();
+      await proj.init(null, { workers: workerCount });
+
+      const mode = proj.get_worker_mode ? proj.get_worker_mode() : 'unknown';
+      const result = await benchScatterGather(proj, generateRandomCoords(SINGLE_ARRAY_COORDS));
+      scatterTimings[workerCount] = { ...result, mode };
+
+      console.log(`  ${workerCount} worker(s) [${mode}]: 1 array x ${SINGLE_ARRAY_COORDS} coords in ${result.elapsed.toFixed(1)}ms`);
+
+      for (const [x, y] of result.spotChecks) {
+        assert(Math.abs(x) > 1000, `X should be in Mercator range: ${x}`);
+        assert(Math.abs(y) > 1000, `Y should be in Mercator range: ${y}`);
+      }
+
+      if (proj.shutdown) await proj.shutdown();
+    });
+  }
+
+  test('setCoords input formats', async () => {
+    const proj = await import('../../src/cljc/net/willcohen/proj/dist/proj.mjs');
+
+    if (proj.shutdown) await proj.shutdown();
+    await proj.init(null, { workers: 1 });
+
+    const coords = generateRandomCoords(SINGLE_ARRAY_COORDS);
+    const timings = await benchSetCoords(proj, coords);
+    console.log(`\n  === setCoords (${SINGLE_ARRAY_COORDS} coords) ===`);
+    for (const [name, ms] of Object.entries(timings)) {
+      console.log(`  ${name}: ${ms.toFixed(1)}ms`);
+    }
+
+    if (proj.shutdown) await proj.shutdown();
+  });
+
   test('report summary', () => {
     const transformCounts = Object.keys(transformTimings).map(Number).sort((a, b) => a - b);
     const crsCounts = Object.keys(crsTimings).map(Number).sort((a, b) => a - b);
@@ -195,6 +301,20 @@ describe('Multi-worker benchmark', () => {
       }
     }
 
+    const scatterCounts = Object.keys(scatterTimings).map(Number).sort((a, b) => a - b);
+    if (scatterCounts.length > 0) {
+      console.log('\n  === Single-Array Scatter/Gather Benchmark ===');
+      console.log(`  ${SINGLE_ARRAY_COORDS} coords in one array`);
+      console.log('  --------------------------');
+      const sBase = scatterTimings[scatterCounts[0]].elapsed;
+      for (const w of scatterCounts) {
+        const t = scatterTimings[w];
+        const speedup = sBase / t.elapsed;
+        const perCoord = (t.elapsed / SINGLE_ARRAY_COORDS * 1000).toFixed(2);
+        console.log(`  ${w} worker(s): ${t.elapsed.toFixed(1)}ms (${speedup.toFixed(2)}x, ${perCoord}us/coord)`);
+      }
+    }
+
     console.log('  --------------------------');
     assert(true);
   });
@@ -0,0 +1,221 @@
+#!/usr/bin/env node
+
+/**
+ * Tests for the persistent grid chunk cache used by fetch-worker.mjs, with
+ * test/browser/server.mjs standing in for cdn.proj.org.
+ *
+ * Run with: node --test test/js/grid-cache.test.mjs
+ */
+
+import { test, describe, before, after } from 'node:test';
+import assert from 'node:assert';
+import { spawn } from 'child_process';
+import { createServer } from 'net';
+import { mkdtemp, rm, writeFile, readdir } from 'fs/promises';
+import { tmpdir } from 'os';
+import { join, dirname } from 'path';
+import { fileURLToPath } from 'url';
+import { openGridCache } from '../../src/cljc/net/willcohen/proj/grid-cache.mjs';
+
+const __dirname = dirname(fileURLToPath(import.meta.url));
+const CHUNK = 1024;
+
+function fixtureBytes(size, seed) {
+  const bytes = new Uint8Array(size);
+  for (let i = 0; i < size; i++) bytes[i] = (i * 31 + seed) & 0xff;
+  return bytes;
+}
+
+function freePort() {
+  return new Promise((resolve) => {
+    const srv = createServer();
+    srv.listen(0, () => {
+      const { port } = srv.address();
+      srv.close(() => resolve(port));
+    });
+  });
+}
+
+describe('grid chunk cache', () => {
+  let server;
+  let url;
+  let root;
+  let fixture;
+  let dir;
+  let networkCalls = 0;
+
+  // Same reply shape as fetch-worker.mjs's doFetch
+  async function doFetch(u, headers) {
+    networkCalls++;
+    const res = await fetch(u, { headers });
+    const body = new Uint8Array(await res.arrayBuffer());
+    const headersStr = [...res.headers.entries()].map(([k, v]) => `${k}: ${v}`).join('\r\n');
+    return { status: res.status, body, headers: headersStr };
+  }
+
+  const get = (cache, start, end) =>
+    cache.fetch(url, { Range: `bytes=${start}-${end}` }, doFetch);
+
+  before(async () => {
+    // The server's document root and the cache directory both live under the
+    // OS temp dir, so the test leaves nothing in the source tree
+    root = await mkdtemp(join(tmpdir(), 'proj-grid-cache-root-'));
+    fixture = join(root, 'grid.bin');
+    await writeFile(fixture, fixtureBytes(10 * CHUNK + 100, 1));
+    dir = await mkdtemp(join(tmpdir(), 'proj-grid-cache-test-'));
+    const port = await freePort();
+    server = spawn(process.execPath, [join(__dirname, '../browser/server.mjs')], {
+      env: { ...process.env, PORT: String(port), ROOT: root },
+      stdio: ['ignore', 'pipe', 'inherit']
+    });
+    await new Promise((resolve) => {
+      server.stdout.on('data', (d) => { if (d.toString().includes('Server running')) resolve(); });
+    });
+    url = `http://localhost:${port}/grid.bin`;
+  });
+
+  after(async () => {
+    server?.kill();
+    await rm(root, { recursive: true, force: true });
+    await rm(dir, { recursive: true, force: true });
+  });
+
+  test('repeated ranges are served without a network request', async () => {
+    const cache = await openGridCache({ directory: dir, chunkSize: CHUNK });
+    const expected = fixtureBytes(10 * CHUNK + 100, 1);
+
+    networkCalls = 0;
+    const first = await get(cache, 0, 4 * CHUNK - 1);
+    assert.strictEqual(first.status, 206);
+    assert.strictEqual(networkCalls, 1);
+
+    const second = await get(cache, 0, 4 * CHUNK - 1);
+    assert.strictEqual(networkCalls, 1, 'second request should not reach the server');
+    assert.strictEqual(second.status, 206);
+    assert.deepStrictEqual(second.body, expected.subarray(0, 4 * CHUNK));
+    assert.match(second.headers, new RegExp(`content-range: bytes 0-${4 * CHUNK - 1}/${expected.length}`));
+
+    // A sub-range of cached chunks is a hit; one reaching past them is not
+    const inner = await get(cache, 100, 2 * CHUNK + 50);
+    assert.strictEqual(networkCalls, 1);
+    assert.deepStrictEqual(inner.body, expected.subarray(100, 2 * CHUNK + 51));
+    await get(cache, 3 * CHUNK, 5 * CHUNK - 1);
+    assert.strictEqual(networkCalls, 2);
+
+    // The final partial chunk is cached too
+    await get(cache, 10 * CHUNK, 10 * CHUNK + 99);
+    const tail = await get(cache, 10 * CHUNK, 10 * CHUNK + 99);
+    assert.strictEqual(networkCalls, 3);
+    assert.deepStrictEqual(tail.body, expected.subarray(10 * CHUNK));
+
+    const stats = cache.getStats();
+    assert(stats.hits >= 3, `expected hits, got ${JSON.stringify(stats)}`);
+  });
+
+  test('chunks persist across cache instances', async () => {
+    const cache = await openGridCache({ directory: dir, chunkSize: CHUNK });
+    networkCalls = 0;
+    const res = await get(cache, CHUNK, 2 * CHUNK - 1);
+    assert.strictEqual(networkCalls, 0, 'a new instance should find chunks on disk');
+    assert.deepStrictEqual(res.body, fixtureBytes(10 * CHUNK + 100, 1).subarray(CHUNK, 2 * CHUNK));
+  });
+
+  test('a changed ETag replaces the cached chunks', async () => {
+    const cache = await openGridCache({ directory: dir, chunkSize: CHUNK, ttlSeconds: 0 });
+    const updated = fixtureBytes(10 * CHUNK + 200, 7);
+    await writeFile(fixture, updated);
+
+    networkCalls = 0;
+    const res = await get(cache, 0, CHUNK - 1);
+    assert.strictEqual(networkCalls, 1, 'an expired validator should be confirmed with the server');
+    assert.deepStrictEqual(res.body, updated.subarray(0, CHUNK));
+
+    const fresh = await openGridCache({ directory: dir, chunkSize: CHUNK });
+    const again = await get(fresh, 0, CHUNK - 1);
+    assert.strictEqual(networkCalls, 1);
+    assert.deepStrictEqual(again.body, updated.subarray(0, CHUNK));
+  });
+
+  test('total size is bounded with least-recently-used eviction', async () => {
+    const small = await mkdtemp(join(tmpdir(), 'proj-grid-cache-lru-'));
+    try {
+      const cache = await openGridCache({ directory: small, chunkSize: CHUNK, maxBytes: 2 * (CHUNK + 200) });
+      await get(cache, 0, 2 * CHUNK - 1);
+      await get(cache, 0, CHUNK - 1);           // chunk 0 is now most recent
+      await get(cache, 4 * CHUNK, 5 * CHUNK - 1);
+      const stats = cache.getStats();
+      assert(stats.evictions > 0, 'should evict');
+      assert(stats.bytes <= 2 * (CHUNK + 200), `bytes ${stats.bytes} should stay under the bound`);
+
+      networkCalls = 0;
+      await get(cache, 0, CHUNK - 1);
+      assert.strictEqual(networkCalls, 0, 'recently used chunk 0 should survive');
+      await get(cache, CHUNK, 2 * CHUNK - 1);
+      assert.strictEqual(networkCalls, 1, 'least recently used chunk 1 should be evicted');
+
+      const files = (await readdir(small)).filter((f) => f.endsWith('.chunk'));
+      assert(files.length <= 2, `at most 2 chunk files expected, found ${files.length}`);
+    } finally {
+      await rm(small, { recursive: true, force: true });
+    }
+  });
+
+  test('instances sharing a directory stay within one bound', async () => {
+    // Each fetch-worker opens its own GridCache on the same directory
+    const shared = await mkdtemp(join(tmpdir(), 'proj-grid-cache-shared-'));
+    try {
+      const bound = 3 * (CHUNK + 200);
+      const a = await openGridCache({ directory: shared, chunkSize: CHUNK, maxBytes: bound });
+      const b = await openGridCache({ directory: shared, chunkSize: CHUNK, maxBytes: bound });
+      await get(a, 0, 2 * CHUNK - 1);
+      await get(b, 4 * CHUNK, 6 * CHUNK - 1);
+      await get(a, 7 * CHUNK, 8 * CHUNK - 1);
+
+      const files = (await readdir(shared)).filter((f) => f.endsWith('.chunk'));
+      assert(files.length <= 3, `at most 3 chunk files expected across instances, found ${files.length}`);
+      assert(a.getStats().bytes <= bound, `bytes ${a.getStats().bytes} should count the other instance's chunks`);
+
+      // The oldest chunks, written by a, went first
+      networkCalls = 0;
+      await get(b, 7 * CHUNK, 8 * CHUNK - 1);
+      assert.strictEqual(networkCalls, 0, "b should be served a's chunk");
+      await get(b, 0, CHUNK - 1);
+      assert.strictEqual(networkCalls, 1, 'the oldest chunk should be evicted');
+    } finally {
+      await rm(shared, { recursive: true, force: true });
+    }
+  });
+
+  test('a shared directory is not re-listed on every miss', async () => {
+    const shared = await mkdtemp(join(tmpdir(), 'proj-grid-cache-relist-'));
+    try {
+      const cache = await openGridCache({ directory: shared, chunkSize: CHUNK, maxBytes: 64 * CHUNK });
+      let listings = 0;
+      const list = cache.store.list;
+      cache.store.list = () => {
+        listings++;
+        return list();
+      };
+      // Three chunks stay under a sixteenth of maxBytes
+      await get(cache, 0, CHUNK - 1);
+      await get(cache, CHUNK, 2 * CHUNK - 1);
+      await get(cache, 2 * CHUNK, 3 * CHUNK - 1);
+      assert.strictEqual(listings, 0, 'misses below the threshold should not list the directory');
+      await get(cache, 3 * CHUNK, 5 * CHUNK - 1);
+      assert.strictEqual(listings, 1, 'crossing the threshold should list it once');
+      assert.strictEqual(cache.getStats().chunks, 5);
+    } finally {
+      await rm(shared, { recursive: true, force: true });
+    }
+  });
+
+  test('requests without a single byte range bypass the cache', async () => {
+    const cache = await openGridCache({ memory: true, chunkSize: CHUNK });
+    networkCalls = 0;
+    const res = await cache.fetch(url, {}, doFetch);
+    await cache.fetch(url, {}, doFetch);
+    assert.strictEqual(res.status, 200);
+    assert.strictEqual(networkCalls, 2);
+    assert.strictEqual(cache.getStats().chunks, 0);
+  });
+});
@@ -583,7 +583,21 @@ describe('proj-wasm Node.js API', () => {
       'shutdown',
       'setCoords',
       'getCoords',
+      'getAll',
+      'getXcol',
+      'getYcol',
+      'getZcol',
+      'getTcol',
       'getWorkerMode',
+      'transArrayParallel',
+      'geodesic',
+      'geodPolygonArea',
+      'getWorkerStats',
+      'resetWorkerStats',
+      'configureScheduling',
+      'batch',
+      'configureBatching',
+      'getBatchStats',
       'contextCreate',
       'coordArray',
       'getCoordArray',
@@ -650,6 +664,218 @@ describe('proj-wasm Node.js API', () => {
     );
   });
 
+  test('getAll and column readers copy results in bulk', async () => {
+    const transformer = await proj.projCreateCrsToCrs({
+      source_crs: "EPSG:4326",
+      target_crs: "EPSG:3857"
+    });
+
+    const coords = await proj.coordArray(3);
+    await proj.setCoords(coords, [[42.3603, -71.0591, 1, 0],
+                                  [42.3551, -71.0656, 2, 0],
+                                  [40.7128, -74.0060, 3, 0]]);
+    await proj.projTransArray({ p: transformer, direction: proj.PJ_FWD, n: 3, coord: coords });
+
+    const all = proj.getAll(coords, new Float64Array(12));
+    const xs = proj.getXcol(coords, new Float64Array(3));
+    const ys = proj.getYcol(coords, new Float64Array(3));
+    const zs = proj.getZcol(coords, new Float64Array(3));
+    for (let i = 0; i < 3; i++) {
+      const single = await proj.getCoords(coords, i);
+      assert.strictEqual(all[i * 4], single[0], `getAll x[${i}] should match getCoords`);
+      assert.strictEqual(xs[i], single[0], `getXcol[${i}] should match getCoords`);
+      assert.strictEqual(ys[i], single[1], `getYcol[${i}] should match getCoords`);
+      assert.strictEqual(zs[i], i + 1, `getZcol[${i}] should carry z through`);
+    }
+    assert(Math.abs(xs[2]) > 1000, `Transformed X should be in metres, got ${xs[2]}`);
+  });
+
+  test('coord arrays are shared with workers and transformed in place', async () => {
+    const transformer = await proj.projCreateCrsToCrs({
+      source_crs: "EPSG:4326",
+      target_crs: "EPSG:3857"
+    });
+    const coords = await proj.coordArray(2);
+    // Node.js always has SharedArrayBuffer, so the worker writes results directly
+    assert(coords.buffer.buffer instanceof SharedArrayBuffer,
+      'coord array should be backed by a SharedArrayBuffer');
+    const view = coords.buffer;
+
+    await proj.setCoords(coords, [[42.3603, -71.0591, 0, 0], [40.7128, -74.0060, 0, 0]]);
+    await proj.projTransArray({ p: transformer, direction: proj.PJ_FWD, n: 2, coord: coords });
+    assert.strictEqual(coords.buffer, view, 'the same Float64Array should hold the results');
+    const x0 = view[0];
+    assert(Math.abs(x0) > 1000, `Transformed X should be in metres, got ${x0}`);
+
+    // The staging buffer is reused across calls of different sizes
+    const bigger = await proj.coordArray(1000);
+    const input = [];
+    for (let i = 0; i < 1000; i++) input.push([42.3603, -71.0591, 0, 0]);
+    await proj.setCoords(bigger, input);
+    await proj.projTransArray({ p: transformer, direction: proj.PJ_FWD, n: 1000, coord: bigger });
+    assert.strictEqual(bigger.buffer[999 * 4], x0, 'last coordinate should match the first transform');
+  });
+
+  test('transArrayParallel splits one array across workers', async () => {
+    const ctx = await proj.contextCreate();
+    const transformer = await proj.projCreateCrsToCrs({
+      source_crs: "EPSG:4326",
+      target_crs: "EPSG:3857",
+      context: ctx
+    });
+
+    const n = 5000;
+    const input = [];
+    for (let i = 0; i < n; i++) {
+      input.push([25 + (i % 240) * 0.1, -125 + (i % 570) * 0.1, 0, 0]);
+    }
+    const parallel = await proj.coordArray(n);
+    const serial = await proj.coordArray(n);
+    await proj.setCoords(parallel, input);
+    await proj.setCoords(serial, input);
+
+    const rc = await proj.transArrayParallel({ p: transformer, coord: parallel, n, min_slice: 500 });
+    assert.strictEqual(rc, 0, 'transArrayParallel should succeed');
+    await proj.projTransArray({ p: transformer, direction: proj.PJ_FWD, n, coord: serial });
+
+    const a = proj.getAll(parallel, new Float64Array(n * 4));
+    const b = proj.getAll(serial, new Float64Array(n * 4));
+    for (let i = 0; i < n * 4; i++) {
+      assert.strictEqual(a[i], b[i], `coordinate value ${i} should match the single-worker result`);
+    }
+  });
+
+  test('geodesic routines match GeographicLib reference values', async () => {
+    const g = await proj.geodesic(6378137, 1 / 298.257223563);
+    const inv = await proj.geodInverse({ g, lat1: 35.60777, lon1: -139.44815, lat2: -11.17491, lon2: -69.95921 });
+    assert(Math.abs(inv.s12 - 8935244.5604818305) < 1e-4, `s12 ${inv.s12}`);
+    assert(Math.abs(inv.azi1 - 111.098748429560326) < 1e-9, `azi1 ${inv.azi1}`);
+    assert(Math.abs(inv.azi2 - 129.289270889708762) < 1e-9, `azi2 ${inv.azi2}`);
+
+    const dir = await proj.geodDirect({ g, lat1: 35.60777, lon1: -139.44815, azi1: inv.azi1, s12: inv.s12 });
+    assert(Math.abs(dir.lat2 - -11.17491) < 1e-9, `lat2 ${dir.lat2}`);
+    assert(Math.abs(dir.lon2 - -69.95921) < 1e-9, `lon2 ${dir.lon2}`);
+
+    const cap = await proj.geodPolygonArea(g, [89, 89, 89, 89], [0, 90, 180, 270]);
+    assert(Math.abs(cap.area - 24952305678.0) < 1, `area ${cap.area}`);
+    assert(Math.abs(cap.perimeter - 631819.8745) < 1e-4, `perimeter ${cap.perimeter}`);
+  });
+
+  test('replicas copy the exact operation and are freed with the transformer', async () => {
+    const workers = proj.getWorkerCount();
+    const ctx = await proj.contextCreate();
+    const op = await proj.projCreate({ context: ctx, definition: "+proj=merc +ellps=WGS84" });
+    const other = (ctx.worker_idx + 1) % workers;
+    assert.strictEqual(await proj.replicateTransformer(op, ctx.worker_idx), op,
+                       'a transformer is its own copy on its worker');
+    if (workers > 1) {
+      const [a, b] = await Promise.all([proj.replicateTransformer(op, other),
+                                        proj.replicateTransformer(op, other)]);
+      assert.strictEqual(a, b, 'concurrent requests share one replica');
+      assert.strictEqual(a.worker_idx, other, 'the replica lives on the requested worker');
+
+      const here = await proj.coordArray(1);
+      const there = await proj.coordArray(1);
+      await proj.setCoords(here, [[0.5, 0.25, 0, 0]]);
+      await proj.setCoords(there, [[0.5, 0.25, 0, 0]]);
+      await proj.projTransArray({ p: op, direction: proj.PJ_FWD, n: 1, coord: here });
+      await proj.projTransArray({ p: a, direction: proj.PJ_FWD, n: 1, coord: there });
+      assert.deepStrictEqual(Array.from(proj.getAll(there, new Float64Array(4))),
+                             Array.from(proj.getAll(here, new Float64Array(4))),
+                             'the replica runs the same operation');
+
+      await proj.projDestroy({ pj: op });
+      assert.strictEqual(a._destroyed, true, 'destroying the transformer frees its replicas');
+    }
+  });
+
+  test('getWorkerStats reports per-worker load and latency', async () => {
+    const workers = proj.getWorkerCount();
+    const before = proj.getWorkerStats();
+    assert.strictEqual(before.length, workers, 'one stats entry per worker');
+    for (const s of before) {
+      for (const key of ['inFlight', 'queuedPoints', 'completed', 'failed',
+                         'totalLatencyMs', 'maxLatencyMs', 'meanLatencyMs', 'contexts']) {
+        assert.strictEqual(typeof s[key], 'number', `${key} should be a number`);
+      }
+    }
+
+    const ctx = await proj.contextCreate();
+    const transformer = await proj.projCreateCrsToCrs({
+      source_crs: "EPSG:4326",
+      target_crs: "EPSG:3857",
+      context: ctx
+    });
+    const ca = await proj.coordArray(100);
+    await proj.projTransArray({ p: transformer, direction: proj.PJ_FWD, n: 100, coord: ca });
+
+    const after = proj.getWorkerStats();
+    const home = after[ctx.worker_idx];
+    assert(home.completed > before[ctx.worker_idx].completed, 'completed calls should increase');
+    assert(home.contexts >= 1, 'the context should be counted on its worker');
+    assert.strictEqual(home.inFlight, 0, 'nothing should be pending once calls resolve');
+    assert.strictEqual(home.queuedPoints, 0, 'no points should be queued once calls resolve');
+
+    // With every worker idle, each new context goes to a worker with the
+    // fewest contexts, which levels the counts out
+    const created = [];
+    for (let i = 0; i < 2 * workers; i++) {
+      const counts = proj.getWorkerStats().map(s => s.contexts);
+      const c = await proj.contextCreate();
+      assert.strictEqual(counts[c.worker_idx], Math.min(...counts),
+                         `context ${i} went to worker ${c.worker_idx} with counts ${counts}`);
+      created.push(c);
+    }
+    const leveled = proj.getWorkerStats().map(s => s.contexts);
+    assert(Math.max(...leveled) - Math.min(...leveled) <= 1,
+           `contexts should be spread evenly, got ${leveled}`);
+
+    const last = created[created.length - 1];
+    const count = proj.getWorkerStats()[last.worker_idx].contexts;
+    await proj.projContextDestroy({ context: last });
+    assert.strictEqual(proj.getWorkerStats()[last.worker_idx].contexts, count - 1,
+                       'destroying a context uncounts it');
+
+    const settings = proj.configureScheduling({ migrate_min_points: 20000 });
+    assert.strictEqual(settings.migrate_min_points, 20000, 'scheduling setting should change');
+    proj.configureScheduling({ migrate_min_points: 10000 });
+  });
+
+  test('same-tick calls to a worker are coalesced into one message', async () => {
+    const ctx = await proj.contextCreate();
+    const codes = ['4326', '3857', '2249', '4269', '32619'];
+    const crss = await Promise.all(codes.map(code =>
+      proj.projCreateFromDatabase({ context: ctx, auth_name: 'EPSG', code, category: proj.PJ_CATEGORY_CRS })));
+
+    proj.resetWorkerStats();
+    const names = await Promise.all(crss.map(crs => proj.projGetName({ obj: crs })));
+    assert.strictEqual(names[0], 'WGS 84');
+    assert.strictEqual(names[1], 'WGS 84 / Pseudo-Mercator');
+    assert(proj.getBatchStats().callsBatched >= 2, 'same-tick calls should share a message');
+    assert.strictEqual(proj.getBatchStats().callsBatched, crss.length - 1,
+                       'the first call goes out at once; only the later ones are batched');
+
+    // A lone call is sent right away as an ordinary message
+    proj.resetWorkerStats();
+    assert.strictEqual(await proj.projGetName({ obj: crss[0] }), 'WGS 84');
+    assert.strictEqual(proj.getBatchStats().batchesSent, 0, 'a lone call is not batched');
+
+    // With automatic coalescing off, batch() still groups the calls
+    proj.configureBatching({ auto: false });
+    try {
+      proj.resetWorkerStats();
+      const again = await proj.batch(() => crss.map(crs => proj.projGetName({ obj: crs })));
+      assert.deepStrictEqual(again, names, 'batched results should match unbatched ones');
+      assert(proj.getBatchStats().callsBatched >= 2, 'batch() should coalesce calls');
+
+      proj.resetWorkerStats();
+      await Promise.all(crss.map(crs => proj.projGetName({ obj: crs })));
+      assert.strictEqual(proj.getBatchStats().batchesSent, 0, 'no coalescing outside batch() when auto is off');
+    } finally {
+      proj.configureBatching({ auto: true });
+    }
+  });
+
   test('get authorities without explicit context', async () => {
     let authorities;
     try {